@@ -0,0 +1,108 @@
+package com.statsig.sdk
+
+/**
+ * A run of consecutive rules that each target nothing but one user_bucket condition, all on the
+ * same salt and ID type, as in layer allocations and experiment group assignment. The bucket
+ * space is split into sorted ranges that record the first rule of the run to pass for each bucket,
+ * so the run is decided by one hash and a binary search instead of evaluating its rules in turn.
+ */
+internal class BucketAllocation private constructor(
+    val hasher: BucketHasher,
+    val idType: String?,
+    // Number of rules in the run
+    val ruleCount: Int,
+    // First bucket of each range, ascending from 0
+    private val boundaries: IntArray,
+    // Index within the run of the first rule passing for each range, or NO_RULE
+    private val ruleIndexes: IntArray,
+) {
+    // Slot of idType in the download's UserAttributes
+    var idAttribute: UserAttribute? = null
+
+    fun ruleFor(bucket: Int): Int {
+        var low = 0
+        var high = boundaries.size - 1
+        while (low < high) {
+            val mid = (low + high + 1) ushr 1
+            if (boundaries[mid] <= bucket) low = mid else high = mid - 1
+        }
+        return ruleIndexes[low]
+    }
+
+    companion object {
+        const val NO_RULE = -1
+        const val BUCKETS = 1000
+
+        private val bucketStrings = Array(BUCKETS) { it.toString() }
+
+        /**
+         * Builds the allocation for the run of bucket rules starting at [start], or returns null
+         * when the rule there has other targeting.
+         */
+        fun build(rules: Array<APIRule>, start: Int): BucketAllocation? {
+            val first = bucketCondition(rules[start]) ?: return null
+            val hasher = first.bucketHasher ?: return null
+            var end = start + 1
+            while (end < rules.size) {
+                val condition = bucketCondition(rules[end]) ?: break
+                if (condition.bucketHasher?.prefix != hasher.prefix || condition.idType != first.idType) {
+                    break
+                }
+                end++
+            }
+
+            val boundaries = ArrayList<Int>()
+            val ruleIndexes = ArrayList<Int>()
+            for (bucket in 0 until BUCKETS) {
+                var passing = NO_RULE
+                for (i in start until end) {
+                    if (passes(rules[i].conditions[0], bucket)) {
+                        passing = i - start
+                        break
+                    }
+                }
+                if (ruleIndexes.isEmpty() || ruleIndexes.last() != passing) {
+                    boundaries.add(bucket)
+                    ruleIndexes.add(passing)
+                }
+            }
+            return BucketAllocation(hasher, first.idType, end - start, boundaries.toIntArray(), ruleIndexes.toIntArray())
+        }
+
+        // The rule's only condition, when it's a user_bucket condition the table can decide
+        private fun bucketCondition(rule: APIRule): APICondition? {
+            val condition = rule.conditions.singleOrNull() ?: return null
+            if (Utils.toStringOrEmpty(condition.type).lowercase() != Const.USER_BUCKET || condition.bucketHasher == null) {
+                return null
+            }
+            return when (condition.operator) {
+                Const.ANY, Const.NONE -> if (condition.targetSet != null) condition else null
+                Const.GT, Const.GTE, Const.LT, Const.LTE ->
+                    if (targetAsDouble(condition.targetValue) != null) condition else null
+                else -> null
+            }
+        }
+
+        // Same comparisons the evaluator makes against a bucket value
+        private fun passes(condition: APICondition, bucket: Int): Boolean {
+            val value = bucket.toDouble()
+            return when (condition.operator) {
+                Const.ANY -> condition.targetSet!!.containsString(bucketStrings[bucket])
+                Const.NONE -> !condition.targetSet!!.containsString(bucketStrings[bucket])
+                Const.GT -> value > targetAsDouble(condition.targetValue)!!
+                Const.GTE -> value >= targetAsDouble(condition.targetValue)!!
+                Const.LT -> value < targetAsDouble(condition.targetValue)!!
+                Const.LTE -> value <= targetAsDouble(condition.targetValue)!!
+                else -> false
+            }
+        }
+
+        private fun targetAsDouble(target: Any?): Double? {
+            return when (target) {
+                is String -> target.toDoubleOrNull()
+                is Number -> target.toDouble()
+                else -> null
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.statsig.sdk
+
+import java.security.MessageDigest
+
+/**
+ * Identifies a bucketing hash by its salt prefix and unit ID, for caching it.
+ */
+internal data class BucketHashKey(val prefix: String, val unitID: String)
+
+/**
+ * The bucketing hash, the first 8 bytes of SHA-256("<prefix><unitID>"), for one rule or
+ * user_bucket condition. The prefix holds the salts, which are fixed per spec, so the digest
+ * state after them is computed once and cloned for each unit ID.
+ */
+internal class BucketHasher(val prefix: String) {
+    // Only read after construction, so cloning it from several threads is safe.
+    // Null when the provider's digest can't be cloned.
+    private val prefixState: MessageDigest? = try {
+        val md = MessageDigest.getInstance(Const.CML_SHA_256)
+        md.update(prefix.toByteArray(Charsets.UTF_8))
+        md.clone()
+        md
+    } catch (e: CloneNotSupportedException) {
+        null
+    }
+
+    fun hash(unitID: String): ULong {
+        val md = start()
+        val scratch = threadLocalScratch.get()
+        if (encodeAscii(unitID, scratch)) {
+            md.update(scratch.input, 0, unitID.length)
+        } else {
+            md.update(unitID.toByteArray(Charsets.UTF_8))
+        }
+        md.digest(scratch.digest, 0, scratch.digest.size)
+        var hash = 0L
+        for (i in 0 until 8) {
+            hash = (hash shl 8) or (scratch.digest[i].toLong() and 0xFF)
+        }
+        return hash.toULong()
+    }
+
+    private fun start(): MessageDigest {
+        if (prefixState != null) {
+            return prefixState.clone() as MessageDigest
+        }
+        val md = MessageDigest.getInstance(Const.CML_SHA_256)
+        md.update(prefix.toByteArray(Charsets.UTF_8))
+        return md
+    }
+
+    // Copies [value] into the scratch buffer when it's ASCII, where UTF-8 is one byte per char
+    private fun encodeAscii(value: String, scratch: Scratch): Boolean {
+        if (value.length > scratch.input.size) {
+            return false
+        }
+        for (i in value.indices) {
+            val c = value[i]
+            if (c.code >= 0x80) {
+                return false
+            }
+            scratch.input[i] = c.code.toByte()
+        }
+        return true
+    }
+
+    private class Scratch {
+        val input = ByteArray(128)
+        val digest = ByteArray(32)
+    }
+
+    companion object {
+        private val threadLocalScratch: ThreadLocal<Scratch> = ThreadLocal.withInitial { Scratch() }
+
+        // A rule's pass percentage buckets on "<config salt>.<rule salt or id>.<unit ID>"
+        fun forRule(config: APIConfig, rule: APIRule): BucketHasher {
+            return BucketHasher(config.salt + '.' + (rule.salt ?: rule.id) + '.')
+        }
+
+        // A user_bucket condition buckets on "<condition salt>.<unit ID>"
+        fun forUserBucket(condition: APICondition): BucketHasher {
+            return BucketHasher("${condition.additionalValues?.get("salt")}.")
+        }
+    }
+}
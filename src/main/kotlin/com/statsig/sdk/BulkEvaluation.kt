@@ -0,0 +1,77 @@
+package com.statsig.sdk
+
+import java.util.concurrent.Executor
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * A single user/entity result produced by StatsigServer.evaluateInBulk
+ *
+ * @property value For gates, whether the gate passed. For configs and layers, whether a rule matched
+ * @property jsonValue The config or layer value, empty for gates
+ */
+data class BulkEvaluationResult(
+    val user: StatsigUser,
+    val name: String,
+    val type: EntityType,
+    val value: Boolean,
+    val ruleID: String,
+    val groupName: String?,
+    val jsonValue: Map<String, Any>,
+)
+
+// Carries an exception thrown by the caller's consumer out of the error boundary, back to the caller
+internal class BulkConsumerException(override val cause: Throwable) : Exception(cause)
+
+/**
+ * Pulls users from an iterator in batches and evaluates each batch on the given executor.
+ * The number of in-flight batches is bounded, so the iterator is only read as fast as the
+ * executor drains it. The first failure stops further submissions and is rethrown once all
+ * submitted batches have finished.
+ */
+internal class BulkEvaluationRunner(options: BulkEvaluationOptions) {
+    private val executor: Executor = options.executor ?: ForkJoinPool.commonPool()
+    private val batchSize = options.batchSize.coerceAtLeast(1)
+    private val maxPendingBatches = options.maxPendingBatches.coerceAtLeast(1)
+
+    fun run(users: Iterator<StatsigUser>, task: (StatsigUser) -> Unit) {
+        val pending = Semaphore(maxPendingBatches)
+        val failure = AtomicReference<Throwable?>(null)
+
+        while (users.hasNext() && failure.get() == null) {
+            val batch = ArrayList<StatsigUser>(batchSize)
+            while (batch.size < batchSize && users.hasNext()) {
+                batch.add(users.next())
+            }
+
+            pending.acquire()
+            try {
+                executor.execute {
+                    try {
+                        for (user in batch) {
+                            if (failure.get() != null) {
+                                break
+                            }
+                            task(user)
+                        }
+                    } catch (e: Throwable) {
+                        failure.compareAndSet(null, e)
+                    } finally {
+                        pending.release()
+                    }
+                }
+            } catch (e: RejectedExecutionException) {
+                pending.release()
+                failure.compareAndSet(null, e)
+            }
+        }
+
+        // Wait for every submitted batch to finish
+        pending.acquire(maxPendingBatches)
+        pending.release(maxPendingBatches)
+
+        failure.get()?.let { throw it }
+    }
+}
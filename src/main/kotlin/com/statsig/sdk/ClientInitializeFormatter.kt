@@ -1,6 +1,7 @@
 package com.statsig.sdk
 
 import com.google.gson.annotations.SerializedName
+import java.util.IdentityHashMap
 
 internal data class ClientInitializeResponse(
     @SerializedName("feature_gates") var feature_gates: Map<String, ClientConfig>,
@@ -89,6 +90,11 @@ internal class ClientInitializeFormatter(
     private val user: StatsigUser = context.user
     private val clientSDKKey: String? = context.clientSDKKey
     private val hash: HashAlgo = context.hash
+    private val specs: SpecSnapshot = context.specs ?: specStore.getSnapshot()
+
+    // Exposures are shared records, so each distinct one is hashed once per response
+    private val hashedExposures: MutableMap<Map<String, String>, SecondaryExposure> = IdentityHashMap()
+    private val evaluations: MutableMap<SpecNode, ConfigEvaluation> = HashMap()
 
     fun getFormattedResponse(): ClientInitializeResponse {
         val evaluatedKeys = mutableMapOf<String, Any>()
@@ -111,15 +117,15 @@ internal class ClientInitializeFormatter(
             return res
         }
 
-        fun mapFn(configs: Map<String, APIConfig>): Map<String, ClientConfig> {
+        fun mapFn(type: EntityType, configs: Map<String, APIConfig>): Map<String, ClientConfig> {
             val res = configs.map { entry ->
-                configToResponse(entry.key, entry.value)
+                configToResponse(type, entry.key, entry.value)
             }
             return filterNulls(res)
         }
 
-        var gates = specStore.getAllGates()
-        var configs = specStore.getAllConfigs()
+        var gates = specs.gates
+        var configs = specs.dynamicConfigs
         if (clientSDKKey != null) {
             val entities = specStore.getEntitiesFromKey(clientSDKKey)
             if (entities != null) {
@@ -128,10 +134,12 @@ internal class ClientInitializeFormatter(
             }
         }
 
+        evaluateInDependencyOrder(gates, configs)
+
         return ClientInitializeResponse(
-            mapFn(gates),
-            mapFn(configs),
-            mapFn(specStore.getAllLayerConfigs()),
+            mapFn(EntityType.GATE, gates),
+            mapFn(EntityType.CONFIG, configs),
+            mapFn(EntityType.LAYER, specs.layerConfigs),
             emptyMap(),
             true,
             specStore.getLastUpdateTime(),
@@ -145,6 +153,35 @@ internal class ClientInitializeFormatter(
         )
     }
 
+    // Gates are evaluated before the entities that reference them, so the nested checks reuse their results
+    private fun evaluateInDependencyOrder(gates: Map<String, APIConfig>, configs: Map<String, APIConfig>) {
+        for (node in specs.dependencies.evaluationOrder) {
+            val configSpec = when (node.type) {
+                EntityType.GATE -> gates[node.name]
+                EntityType.CONFIG -> configs[node.name]
+                EntityType.LAYER -> specs.layerConfigs[node.name]
+            } ?: continue
+            if (isVisible(configSpec)) {
+                evaluationFor(node, configSpec)
+            }
+        }
+    }
+
+    private fun evaluationFor(node: SpecNode, configSpec: APIConfig): ConfigEvaluation {
+        return evaluations.getOrPut(node) {
+            val evalContext = context.asNewEvaluation()
+            evalFun(evalContext, configSpec)
+            evalContext.evaluation
+        }
+    }
+
+    private fun isVisible(configSpec: APIConfig): Boolean {
+        if (configSpec.entity == "segment" || configSpec.entity == "holdout") {
+            return false
+        }
+        return InitializeFormatterUtils.configSpecIsForThisTargetApp(clientSDKKey, specStore, configSpec)
+    }
+
     private fun populateExperimentFields(
         configName: String,
         configSpec: APIConfig,
@@ -160,10 +197,9 @@ internal class ClientInitializeFormatter(
 
         result.isInLayer = true
         result.explicitParameters = configSpec.explicitParameters ?: emptyArray()
-        result.secondaryExposures = evalResult.secondaryExposures
 
-        val layerName = specStore.getLayerNameForExperiment(configName) ?: return
-        val layer = specStore.getLayerConfig(layerName) ?: return
+        val layerName = specs.getLayerNameForExperiment(configName) ?: return
+        val layer = specs.getLayerConfig(layerName) ?: return
 
         // TODO: verify this is safe
         val layerValue = layer.defaultValue as Map<String, Any>
@@ -176,26 +212,17 @@ internal class ClientInitializeFormatter(
         result.explicitParameters = configSpec.explicitParameters ?: emptyArray()
 
         if (delegate != null && delegate != "") {
-            val delegateSpec = specStore.getConfig(delegate)
-            var delegateContext = context.asNewEvaluation()
+            val delegateSpec = specs.getConfig(delegate)
             if (delegateSpec != null) {
-                evalFun(delegateContext, delegateSpec)
+                val delegateEvaluation = evaluationFor(SpecNode(EntityType.CONFIG, delegate), delegateSpec)
                 result.allocatedExperimentName = hashName(delegate)
-                result.isUserInExperiment = delegateContext.evaluation.isExperimentGroup
+                result.isUserInExperiment = delegateEvaluation.isExperimentGroup
                 result.isExperimentActive = delegateSpec.isActive
                 result.explicitParameters = delegateSpec.explicitParameters ?: emptyArray()
-                result.secondaryExposures = hashExposures(delegateContext.evaluation.secondaryExposures)
-                if (delegateContext.evaluation.groupName != null && delegateContext.evaluation.groupName != "") {
-                    result.group_name = delegateContext.evaluation.groupName
+                result.secondaryExposures = hashExposures(delegateEvaluation.secondaryExposures)
+                if (delegateEvaluation.groupName != null && delegateEvaluation.groupName != "") {
+                    result.group_name = delegateEvaluation.groupName
                 }
-            } else {
-                delegateContext.evaluation = ConfigEvaluation(
-                    evaluationDetails = EvaluationDetails(
-                        this.specStore.getLastUpdateTime(),
-                        this.specStore.getInitTime(),
-                        EvaluationReason.UNRECOGNIZED,
-                    ),
-                )
             }
         }
 
@@ -203,73 +230,67 @@ internal class ClientInitializeFormatter(
     }
 
     private fun hashExposures(exposures: ArrayList<Map<String, String>>): ArrayList<Map<String, String>> {
-        val hashedExposures = ArrayList<Map<String, String>>()
+        val hashedExposures = ArrayList<Map<String, String>>(exposures.size)
 
         for (exposure in exposures) {
-            val hashedExposure = mapOf(
-                "gate" to hashName(exposure["gate"] ?: ""),
-                "gateValue" to (exposure["gateValue"] ?: ""),
-                "ruleID" to (exposure["ruleID"] ?: ""),
-            )
+            val hashedExposure = this.hashedExposures.getOrPut(exposure) {
+                SecondaryExposure(
+                    hashName(exposure["gate"] ?: ""),
+                    exposure["gateValue"] ?: "",
+                    exposure["ruleID"] ?: "",
+                )
+            }
             hashedExposures.add(hashedExposure)
         }
 
         return hashedExposures
     }
 
-    private fun configToResponse(configName: String, configSpec: APIConfig): ClientConfig? {
-        if (configSpec.entity == "segment" || configSpec.entity == "holdout") {
+    private fun configToResponse(type: EntityType, configName: String, configSpec: APIConfig): ClientConfig? {
+        if (!isVisible(configSpec)) {
             return null
         }
 
-        if (!InitializeFormatterUtils.configSpecIsForThisTargetApp(clientSDKKey, specStore, configSpec)) {
-            return null
-        }
-
-        val evalContext = context.asNewEvaluation()
-        evalFun(evalContext, configSpec)
+        val evaluation = evaluationFor(SpecNode(type, configName), configSpec)
         val hashedName = hashName(configName)
 
-        val hashedExposures = hashExposures(evalContext.evaluation.secondaryExposures)
-        evalContext.evaluation.secondaryExposures = hashedExposures
-
         val result = ClientConfig(
             hashedName,
             "value" to false,
-            evalContext.evaluation.ruleID,
-            evalContext.evaluation.secondaryExposures,
+            evaluation.ruleID,
+            hashExposures(evaluation.secondaryExposures),
         )
         val category = configSpec.type
         val entityType = configSpec.entity
 
         if (category == "feature_gate") {
-            result.value = evalContext.evaluation.booleanValue
+            result.value = evaluation.booleanValue
             result.idType = configSpec.idType
             return result
         } else if (category == "dynamic_config") {
-            result.value = evalContext.evaluation.jsonValue ?: emptyMap<Any, Any>()
-            result.group = evalContext.evaluation.ruleID
+            result.value = evaluation.jsonValue ?: emptyMap<Any, Any>()
+            result.group = evaluation.ruleID
             result.isDeviceBased = configSpec.idType.lowercase() == "stableid"
-            if (evalContext.evaluation.groupName != null && evalContext.evaluation.groupName != "") {
-                result.group_name = evalContext.evaluation.groupName
+            if (evaluation.groupName != null && evaluation.groupName != "") {
+                result.group_name = evaluation.groupName
             }
             if (entityType != "layer") {
                 result.idType = configSpec.idType
             }
 
             if (entityType == "dynamic_config") {
-                result.passed = evalContext.evaluation.booleanValue
+                result.passed = evaluation.booleanValue
             }
 
             if (entityType == "experiment") {
                 populateExperimentFields(
                     configName,
                     configSpec,
-                    evalContext.evaluation,
+                    evaluation,
                     result,
                 )
             } else if (entityType == "layer") {
-                populateLayerFields(configSpec, evalContext.evaluation, result)
+                populateLayerFields(configSpec, evaluation, result)
             }
             return result
         }
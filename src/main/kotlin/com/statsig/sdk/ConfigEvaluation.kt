@@ -29,6 +29,30 @@ class ConfigEvaluation(
         }
     }
 
+    // Callers own the exposure lists of their evaluation, so a shared result is handed out as a copy
+    internal fun copy(): ConfigEvaluation {
+        val copy = ConfigEvaluation(
+            booleanValue = booleanValue,
+            jsonValue = jsonValue,
+            ruleID = ruleID,
+            groupName = groupName,
+            secondaryExposures = ArrayList(secondaryExposures),
+            undelegatedSecondaryExposures = ArrayList(undelegatedSecondaryExposures),
+            explicitParameters = explicitParameters,
+            configDelegate = configDelegate,
+            evaluationDetails = evaluationDetails,
+            isExperimentGroup = isExperimentGroup,
+            configVersion = configVersion,
+            forwardAllExposures = forwardAllExposures,
+            samplingRate = samplingRate,
+            isActive = isActive,
+            idType = idType,
+            hasSeenAnalyticalGates = hasSeenAnalyticalGates,
+        )
+        copy.isDelegate = isDelegate
+        return copy
+    }
+
     // Used to save to PersistentStorage
     fun toStickyValues(): StickyValues {
         return StickyValues(
@@ -0,0 +1,95 @@
+package com.statsig.sdk
+
+/**
+ * The outcome of a config that doesn't depend on the user: one that is disabled, has no rules,
+ * or whose first rule has only public conditions and passes 0% or 100% of users. Rules decided by
+ * the process environment count as public for the outcome specialized to it.
+ *
+ * Evaluating such a config copies the recorded fields rather than walking its rules, and
+ * pass_gate/fail_gate references to a constant gate share one nested evaluation across users.
+ */
+internal class ConstantOutcome private constructor(
+    // Null when the outcome holds in any environment
+    val specialization: EnvironmentSpecialization?,
+    private val config: APIConfig,
+    // The rule deciding the outcome, or null when no rule passes
+    private val rule: APIRule?,
+    // The last rule evaluated, whose isExperimentGroup remains when no rule passes
+    private val lastRule: APIRule?,
+) {
+    // Never modified, as nested results are only read
+    val nestedEvaluation = ConfigEvaluation().also {
+        it.configVersion = config.version
+        it.isActive = config.isActive
+        it.idType = config.idType
+        applyTo(it)
+    }
+
+    /**
+     * Sets the fields evaluating the config's rules would, after its version, active state and ID type.
+     */
+    fun applyTo(evaluation: ConfigEvaluation) {
+        if (!config.enabled) {
+            evaluation.booleanValue = false
+            evaluation.jsonValue = config.defaultValue
+            evaluation.ruleID = Const.DISABLED
+            return
+        }
+        val rule = rule
+        if (rule == null) {
+            lastRule?.let { evaluation.isExperimentGroup = it.isExperimentGroup == true }
+            evaluation.booleanValue = false
+            evaluation.jsonValue = config.defaultValue
+            evaluation.ruleID = Const.DEFAULT
+            evaluation.groupName = null
+            return
+        }
+        val pass = rule.passPercentage == 100.0
+        evaluation.booleanValue = pass
+        evaluation.jsonValue = if (pass) rule.returnValue else config.defaultValue
+        evaluation.ruleID = rule.id
+        evaluation.groupName = rule.groupName
+        evaluation.samplingRate = rule.samplingRate
+        evaluation.isExperimentGroup = rule.isExperimentGroup ?: false
+    }
+
+    companion object {
+        /**
+         * Records the outcome of each config in [specs] that has one, in any environment or else
+         * in the one [specialization] was built for.
+         */
+        fun build(specialization: EnvironmentSpecialization, vararg specs: Map<String, APIConfig>) {
+            for (configs in specs) {
+                for (config in configs.values) {
+                    config.constantOutcome = if (!config.enabled) {
+                        ConstantOutcome(null, config, null, null)
+                    } else {
+                        fold(null, config, config.rules)
+                            ?: fold(specialization, config, config.specializedRules?.rules ?: config.rules)
+                    }
+                }
+            }
+        }
+
+        private fun fold(specialization: EnvironmentSpecialization?, config: APIConfig, rules: Array<APIRule>): ConstantOutcome? {
+            for (rule in rules) {
+                val passes = if (isPublic(rule)) true else specialization?.let { rule.environmentResult?.value }
+                when (passes) {
+                    null -> return null
+                    false -> continue
+                    true -> {
+                        if (rule.configDelegate != null || (rule.passPercentage != 0.0 && rule.passPercentage != 100.0)) {
+                            return null
+                        }
+                        return ConstantOutcome(specialization, config, rule, null)
+                    }
+                }
+            }
+            return ConstantOutcome(specialization, config, null, rules.lastOrNull())
+        }
+
+        private fun isPublic(rule: APIRule): Boolean {
+            return rule.conditions.all { Utils.toStringOrEmpty(it.type).lowercase() == Const.PUBLIC }
+        }
+    }
+}
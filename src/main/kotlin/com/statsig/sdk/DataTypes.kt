@@ -41,6 +41,10 @@ internal data class APIConfig(
     @SerializedName("targetAppIDs") val targetAppIDs: Array<String>? = null,
     @SerializedName("version") val version: Long? = 0,
     @SerializedName("forwardAllExposures") val forwardAllExposures: Boolean?,
+    @Transient
+    var specializedRules: SpecializedRules? = null,
+    @Transient
+    var constantOutcome: ConstantOutcome? = null,
 )
 
 internal data class APIRule(
@@ -55,6 +59,16 @@ internal data class APIRule(
     @SerializedName("configDelegate") val configDelegate: String?,
     @SerializedName("isExperimentGroup") val isExperimentGroup: Boolean?,
     @SerializedName("samplingRate") val samplingRate: Long?,
+    @Transient
+    var bucketHasher: BucketHasher? = null,
+    @Transient
+    var bucketAllocation: BucketAllocation? = null,
+    @Transient
+    var overrideIndex: OverrideIndex? = null,
+    @Transient
+    var environmentResult: EnvironmentResult? = null,
+    @Transient
+    var idAttribute: UserAttribute? = null,
 ) {
     fun isTargetingRule(): Boolean {
         return id == "targetingGate" || id == "inlineTargetingRules"
@@ -73,7 +87,31 @@ internal data class APICondition(
     @SerializedName("additionalValues") val additionalValues: Map<String, Any>?,
     @SerializedName("idType") val idType: String,
     @Transient
-    var segmentIdSet: Set<String>? = null
+    var segmentIdSet: Set<String>? = null,
+    @Transient
+    var versionTarget: Version? = null,
+    @Transient
+    var targetTimestamp: Long? = null,
+    @Transient
+    var targetEpochDay: Long? = null,
+    @Transient
+    var targetSet: TargetSet? = null,
+    @Transient
+    var stringMatcher: StringMatcher? = null,
+    @Transient
+    var bucketHasher: BucketHasher? = null,
+    @Transient
+    var shared: SharedCondition? = null,
+    @Transient
+    var timeThreshold: TimeThreshold? = null,
+    @Transient
+    var userField: UserField? = null,
+    @Transient
+    var attribute: UserAttribute? = null,
+    @Transient
+    var idAttribute: UserAttribute? = null,
+    @Transient
+    var environmentResult: EnvironmentResult? = null,
 )
 
 data class APIFeatureGate(
@@ -0,0 +1,143 @@
+package com.statsig.sdk
+
+/**
+ * The specs of a download partially evaluated against the process environment set through
+ * StatsigOptions. environment_field conditions with compiled targets are decided at load,
+ * rules that can't pass in this environment are dropped, and rules after one that always passes
+ * are cut, since evaluation never reaches them.
+ *
+ * The results hold for users whose environment equals the one at load, which is every user
+ * normalized by the server while the options are unchanged. Anyone else is evaluated in full.
+ */
+internal class EnvironmentSpecialization private constructor(
+    // Copied, since the options' map can still be changed after load
+    private val environment: Map<String, String>?,
+) {
+    fun matches(user: StatsigUser): Boolean {
+        return user.statsigEnvironment == environment
+    }
+
+    companion object {
+        // Conditions that only compute a value from the user or process and compare it, so skipping
+        // them changes nothing but the time taken. pass_gate/fail_gate add exposures, and an unknown
+        // type or operator marks the evaluation unsupported.
+        private val PURE_TYPES = setOf(
+            Const.PUBLIC,
+            Const.USER_FIELD,
+            Const.UNIT_ID,
+            Const.ENVIRONMENT_FIELD,
+            Const.IP_BASED,
+            Const.UA_BASED,
+            Const.USER_BUCKET,
+            Const.CURRENT_TIME,
+            Const.TARGET_APP,
+        )
+        private val PURE_OPERATORS = setOf(
+            Const.GT, Const.GTE, Const.LT, Const.LTE,
+            Const.VERSION_GT, Const.VERSION_GTE, Const.VERSION_LT, Const.VERSION_LTE,
+            Const.VERSION_EQ, Const.VERSION_NEQ,
+            Const.ANY, Const.NONE, Const.ANY_CASE_SENSITIVE, Const.NONE_CASE_SENSITIVE,
+            Const.STR_STARTS_WITH_ANY, Const.STR_ENDS_WITH_ANY, Const.STR_CONTAINS_ANY,
+            Const.STR_CONTAINS_NONE, Const.STR_MATCHES,
+            Const.ARRAY_CONTAINS_ANY, Const.ARRAY_CONTAINS_NONE, Const.ARRAY_CONTAINS_ALL,
+            Const.NOT_ARRAY_CONTAINS_ALL,
+            Const.EQ, Const.NEQ, Const.BEFORE, Const.AFTER, Const.ON,
+            Const.IN_SEGMENT_LIST, Const.NOT_IN_SEGMENT_LIST,
+        )
+
+        /**
+         * Specializes [specs] for [environment], recording the results on the conditions, rules
+         * and configs they apply to.
+         */
+        fun build(environment: Map<String, String>?, vararg specs: Map<String, APIConfig>): EnvironmentSpecialization {
+            val specialization = EnvironmentSpecialization(environment?.let { HashMap(it) })
+            for (configs in specs) {
+                for (config in configs.values) {
+                    specialize(specialization, config)
+                }
+            }
+            return specialization
+        }
+
+        private fun specialize(specialization: EnvironmentSpecialization, config: APIConfig) {
+            val rules = ArrayList<APIRule>(config.rules.size)
+            for ((i, rule) in config.rules.withIndex()) {
+                val result = specializeRule(specialization, rule)
+                if (result == false && i < config.rules.size - 1) {
+                    // A failing last rule is kept, as its isExperimentGroup outlives the loop
+                    continue
+                }
+                rules.add(rule)
+                if (result == true) {
+                    break
+                }
+            }
+            if (rules.size < config.rules.size) {
+                config.specializedRules = SpecializedRules(specialization, rules.toTypedArray())
+            }
+        }
+
+        // Folds the rule's environment conditions, returning its result when no other condition decides it
+        private fun specializeRule(specialization: EnvironmentSpecialization, rule: APIRule): Boolean? {
+            var folded = true
+            var failed = false
+            var pure = true
+            for (condition in rule.conditions) {
+                val type = Utils.toStringOrEmpty(condition.type).lowercase()
+                val result = if (type == Const.PUBLIC) true else evaluate(specialization.environment, type, condition)
+                if (result != null && type != Const.PUBLIC) {
+                    condition.environmentResult = EnvironmentResult(specialization, result)
+                }
+                if (result == null) {
+                    folded = false
+                } else if (!result) {
+                    failed = true
+                }
+                if (type !in PURE_TYPES || (type != Const.PUBLIC && condition.operator !in PURE_OPERATORS)) {
+                    pure = false
+                }
+            }
+            val result = when {
+                failed && pure -> false
+                folded -> !failed
+                else -> return null
+            }
+            rule.environmentResult = EnvironmentResult(specialization, result)
+            return result
+        }
+
+        // Same comparisons the evaluator makes, for the operators whose targets are compiled at load
+        private fun evaluate(environment: Map<String, String>?, type: String, condition: APICondition): Boolean? {
+            if (type != Const.ENVIRONMENT_FIELD || condition.segmentIdSet != null) {
+                return null
+            }
+            val field = Utils.toStringOrEmpty(condition.field)
+            val value = environment?.get(field) ?: environment?.get(field.lowercase())
+            val targetSet = condition.targetSet
+            val stringMatcher = condition.stringMatcher
+            return when (condition.operator) {
+                Const.ANY, Const.ANY_CASE_SENSITIVE ->
+                    if (targetSet == null) null else value != null && targetSet.containsString(value)
+                Const.NONE, Const.NONE_CASE_SENSITIVE ->
+                    if (targetSet == null) null else value == null || !targetSet.containsString(value)
+                Const.STR_STARTS_WITH_ANY, Const.STR_ENDS_WITH_ANY, Const.STR_CONTAINS_ANY ->
+                    if (stringMatcher == null) null else value != null && stringMatcher.matches(value)
+                Const.STR_CONTAINS_NONE ->
+                    if (stringMatcher == null) null else value == null || !stringMatcher.matches(value)
+                Const.EQ -> value == condition.targetValue
+                Const.NEQ -> value != condition.targetValue
+                else -> null
+            }
+        }
+    }
+}
+
+/**
+ * The result a condition or rule always has in the environment of [specialization].
+ */
+internal class EnvironmentResult(val specialization: EnvironmentSpecialization, val value: Boolean)
+
+/**
+ * A config's rules that remain in the environment of [specialization], in their original order.
+ */
+internal class SpecializedRules(val specialization: EnvironmentSpecialization, val rules: Array<APIRule>)
@@ -0,0 +1,197 @@
+package com.statsig.sdk
+
+import java.util.Collections
+
+/**
+ * Results of evaluating gates, configs and layers, kept for the attributes each one reads as
+ * worked out in [RequiredUserFields]. Users that agree on those attributes share an entry.
+ *
+ * Entries are checked against the current specs. When a download changes a spec, the entries
+ * for it and for every spec referencing it are dropped, and the rest carry over. A spec without
+ * a version counts as changed on every download. Bounded to [maxSize] entries, split across
+ * stripes that each keep their least recently used share.
+ */
+internal class EvaluationCache(maxSize: Int) {
+    /**
+     * An entity and the values of the attributes it reads, copied when the key is made so it
+     * never shares data with the caller's user. Keys compare every value. The fingerprint only
+     * picks the bucket and rules out most mismatches before the values are compared.
+     */
+    internal class Key private constructor(val node: SpecNode, private val values: List<Any?>) {
+        private val fingerprint = Fingerprint.of(values)
+
+        override fun equals(other: Any?): Boolean {
+            return other is Key && fingerprint == other.fingerprint && node == other.node && values == other.values
+        }
+
+        override fun hashCode(): Int {
+            return 31 * node.hashCode() + (fingerprint xor (fingerprint ushr 32)).toInt()
+        }
+
+        companion object {
+            fun of(node: SpecNode, values: List<Any?>): Key {
+                return Key(node, Collections.unmodifiableList(values.map { frozen(it) }))
+            }
+
+            // Strings, numbers and booleans are immutable. Maps and collections are copied, and
+            // other objects are kept as their class and text, which is what conditions read.
+            private fun frozen(value: Any?): Any? {
+                return when (value) {
+                    null, is String, is Boolean, is Long, is Int, is Short, is Byte, is Double, is Float -> value
+                    is Map<*, *> -> Collections.unmodifiableMap(value.entries.associate { frozen(it.key) to frozen(it.value) })
+                    is Iterable<*> -> Collections.unmodifiableList(value.map { frozen(it) })
+                    is Array<*> -> Collections.unmodifiableList(value.map { frozen(it) })
+                    else -> Opaque(value.javaClass, value.toString())
+                }
+            }
+        }
+
+        private data class Opaque(val type: Class<*>, val text: String)
+    }
+
+    // One access-ordered LRU per stripe, each guarded by its own monitor
+    private class Segment(private val maxSize: Int) {
+        var specs: SpecSnapshot? = null
+        var hits: Long = 0
+        val entries = object : LinkedHashMap<Key, ConfigEvaluation>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, ConfigEvaluation>?): Boolean {
+                return size > maxSize
+            }
+        }
+    }
+
+    // Serializes moving to new specs, which is once per download
+    private val lock = Any()
+
+    // The specs entries are valid for. Read without locking on every lookup.
+    @Volatile
+    private var specs: SpecSnapshot? = null
+
+    private val segments = run {
+        val count = (maxSize / MIN_SEGMENT_SIZE).coerceIn(1, MAX_SEGMENTS)
+        Array(count) { Segment(maxSize / count + if (it < maxSize % count) 1 else 0) }
+    }
+
+    // Lookups answered from the cache
+    val hits: Long
+        get() = segments.sumOf { synchronized(it) { it.hits } }
+
+    /**
+     * The key for evaluating [node] against [specs] for [user], or null when the result can
+     * depend on more than the user's attributes. [current] is the specs now in the store,
+     * which evaluations pinned to older specs don't read or write.
+     *
+     * Users with attribute suppliers are not cached, since building the key would run every
+     * supplier for an attribute the entity reads.
+     */
+    fun keyFor(specs: SpecSnapshot, current: SpecSnapshot, node: SpecNode, user: StatsigUser): Key? {
+        if (specs !== current || user.hasAttributeSuppliers()) {
+            return null
+        }
+        val required = specs.requiredUserFields.get(node)
+        if (!required.cacheable) {
+            return null
+        }
+        if (this.specs !== specs) {
+            moveTo(specs)
+        }
+        return Key.of(node, required.valuesOf(user))
+    }
+
+    fun get(specs: SpecSnapshot, key: Key): ConfigEvaluation? {
+        if (specs !== this.specs) {
+            return null
+        }
+        val segment = segmentFor(key)
+        synchronized(segment) {
+            if (specs !== segment.specs) {
+                return null
+            }
+            val entry = segment.entries[key] ?: return null
+            segment.hits++
+            return entry.copy()
+        }
+    }
+
+    fun put(specs: SpecSnapshot, key: Key, evaluation: ConfigEvaluation) {
+        if (specs !== this.specs) {
+            return
+        }
+        val copy = evaluation.copy()
+        val segment = segmentFor(key)
+        synchronized(segment) {
+            if (specs === segment.specs) {
+                segment.entries[key] = copy
+            }
+        }
+    }
+
+    private fun segmentFor(key: Key): Segment {
+        val hash = key.hashCode()
+        return segments[Math.floorMod(hash xor (hash ushr 16), segments.size)]
+    }
+
+    // Segments are pruned one at a time under their own locks. Until a segment has moved,
+    // its specs don't match, so lookups miss and writes for the old specs are dropped.
+    private fun moveTo(specs: SpecSnapshot) {
+        synchronized(lock) {
+            val previous = this.specs
+            if (previous === specs) {
+                return
+            }
+            this.specs = specs
+            val changed = if (previous == null) null else changedNodes(previous, specs)
+            for (segment in segments) {
+                synchronized(segment) {
+                    if (changed == null || segment.specs !== previous) {
+                        segment.entries.clear()
+                    } else if (changed.isNotEmpty()) {
+                        segment.entries.keys.removeAll { it.node in changed }
+                    }
+                    segment.specs = specs
+                }
+            }
+        }
+    }
+
+    companion object {
+        // Small caches keep one exact LRU; larger ones are split so lookups rarely share a lock
+        private const val MIN_SEGMENT_SIZE = 64
+        private const val MAX_SEGMENTS = 16
+
+        /**
+         * The specs that differ between [previous] and [specs], with every spec referencing
+         * them in either.
+         */
+        fun changedNodes(previous: SpecSnapshot, specs: SpecSnapshot): Set<SpecNode> {
+            val changed = HashSet<SpecNode>()
+            fun compare(type: EntityType, before: Map<String, APIConfig>, after: Map<String, APIConfig>) {
+                for ((name, config) in after) {
+                    val version = config.version
+                    if (version == null || before[name]?.version != version) {
+                        changed.add(SpecNode(type, name))
+                    }
+                }
+                for (name in before.keys) {
+                    if (!after.containsKey(name)) {
+                        changed.add(SpecNode(type, name))
+                    }
+                }
+            }
+            compare(EntityType.GATE, previous.gates, specs.gates)
+            compare(EntityType.CONFIG, previous.dynamicConfigs, specs.dynamicConfigs)
+            compare(EntityType.LAYER, previous.layerConfigs, specs.layerConfigs)
+
+            val pending = ArrayDeque(changed)
+            while (pending.isNotEmpty()) {
+                val node = pending.removeFirst()
+                for (dependent in previous.dependencies.getDependents(node) + specs.dependencies.getDependents(node)) {
+                    if (changed.add(dependent)) {
+                        pending.add(dependent)
+                    }
+                }
+            }
+            return changed
+        }
+    }
+}
@@ -13,7 +13,27 @@ internal class EvaluationContext(
     var persistentAssignmentOptions: PersistentAssignmentOptions? = null,
     var onlyEvaluateTargeting: Boolean = false,
     var onlyEvaluateOverrides: Boolean = false,
+    // Specs this evaluation is pinned to, set on first lookup and shared by nested evaluations
+    var specs: SpecSnapshot? = null,
+    // Results of gates referenced by pass_gate/fail_gate conditions, shared with every copy of this context
+    var nestedGateResults: MutableMap<String, ConfigEvaluation>? = null,
+    // Bucketing hashes computed for this user, shared with every copy of this context
+    var bucketHashes: MutableMap<BucketHashKey, ULong>? = null,
+    // Override rules this user passes, shared with every copy of this context
+    var overrideMatches: OverrideMatches? = null,
+    // Results of conditions repeated across specs, shared with every copy of this context
+    var conditionMemo: ConditionMemo? = null,
+    // Attributes of the user read so far, shared with every copy of this context
+    var preparedUser: PreparedUser? = null,
 ) {
+    // Last user version parsed for a version_* condition
+    internal var parsedVersionInput: Any? = null
+    internal var parsedVersion: Version? = null
+
+    // Whether results folded for environmentSpecialization hold for this user, checked on first use
+    internal var environmentSpecialization: EnvironmentSpecialization? = null
+    internal var inSpecializedEnvironment: Boolean = false
+
     // Overload without default parameters required for Java
     constructor(user: StatsigUser) : this(user, ConfigEvaluation())
 
@@ -28,18 +48,15 @@ internal class EvaluationContext(
         persistentAssignmentOptions = ctx.persistentAssignmentOptions,
         onlyEvaluateTargeting = ctx.onlyEvaluateTargeting,
         onlyEvaluateOverrides = ctx.onlyEvaluateOverrides,
-    )
-
-    internal fun asDelegate(): EvaluationContext {
-        var context = EvaluationContext(this)
-        context.evaluation.isDelegate = true
-        return context
-    }
-
-    internal fun asNested(): EvaluationContext {
-        var context = EvaluationContext(this)
-        context.isNested = true
-        return context
+        specs = ctx.specs,
+        nestedGateResults = ctx.nestedGateResults,
+        bucketHashes = ctx.bucketHashes,
+        overrideMatches = ctx.overrideMatches,
+        conditionMemo = ctx.conditionMemo,
+        preparedUser = ctx.preparedUser,
+    ) {
+        environmentSpecialization = ctx.environmentSpecialization
+        inSpecializedEnvironment = ctx.inSpecializedEnvironment
     }
 
     internal fun asNewEvaluation(): EvaluationContext {
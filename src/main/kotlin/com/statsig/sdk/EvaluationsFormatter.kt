@@ -1,6 +1,7 @@
 package com.statsig.sdk
 
 import com.google.gson.annotations.SerializedName
+import java.util.IdentityHashMap
 
 internal data class EvaluationsResponse(
     @SerializedName("feature_gates") var featureGates: Map<String, EvaluationClientConfig>,
@@ -88,8 +89,13 @@ internal class EvaluationsFormatter(
     private val user: StatsigUser = context.user
     private val clientSDKKey: String? = context.clientSDKKey
     private val hash: HashAlgo = context.hash
+    private val specs: SpecSnapshot = context.specs ?: specStore.getSnapshot()
     private val exposures: MutableMap<String, Map<String, String>> = mutableMapOf()
 
+    // Exposures are shared records, so each distinct one is hashed once per response
+    private val exposureKeys: MutableMap<Map<String, String>, String> = IdentityHashMap()
+    private val evaluations: MutableMap<SpecNode, ConfigEvaluation> = HashMap()
+
     fun getFormattedResponse(): EvaluationsResponse {
         val evaluatedKeys = mutableMapOf<String, Any>()
         user.userID?.let { userId ->
@@ -113,15 +119,15 @@ internal class EvaluationsFormatter(
             return res
         }
 
-        fun mapFn(configs: Map<String, APIConfig>): Map<String, EvaluationClientConfig> {
+        fun mapFn(type: EntityType, configs: Map<String, APIConfig>): Map<String, EvaluationClientConfig> {
             val res = configs.map { entry ->
-                configToResponse(entry.key, entry.value)
+                configToResponse(type, entry.key, entry.value)
             }
             return filterNulls(res)
         }
 
-        var gates = specStore.getAllGates()
-        var configs = specStore.getAllConfigs()
+        var gates = specs.gates
+        var configs = specs.dynamicConfigs
         if (clientSDKKey != null) {
             val entities = specStore.getEntitiesFromKey(clientSDKKey)
             if (entities != null) {
@@ -130,12 +136,14 @@ internal class EvaluationsFormatter(
             }
         }
 
+        evaluateInDependencyOrder(gates, configs)
+
         val metadata = StatsigMetadata()
 
         return EvaluationsResponse(
-            mapFn(gates),
-            mapFn(configs),
-            mapFn(specStore.getAllLayerConfigs()),
+            mapFn(EntityType.GATE, gates),
+            mapFn(EntityType.CONFIG, configs),
+            mapFn(EntityType.LAYER, specs.layerConfigs),
             true, // has_updates
             specStore.getLastUpdateTime(),
             this.hash.toString().lowercase(),
@@ -149,18 +157,53 @@ internal class EvaluationsFormatter(
     }
 
     private fun dedupeExposures(secondaryExposures: List<Map<String, String>>): ArrayList<String> {
-        val exposureKeys = ArrayList<String>()
+        val keys = ArrayList<String>(secondaryExposures.size)
         for (exposure in secondaryExposures) {
-            val key = exposure["gate"] ?: "" + ":" + exposure["gateValue"] ?: "" + ":" + exposure["ruleID"] ?: ""
-            val hashKey = Hashing.djb2(key)
-            if (this.exposures.containsKey(hashKey)) {
-                exposureKeys.add(hashKey)
-            } else {
-                this.exposures[hashKey] = exposure
-                exposureKeys.add(hashKey)
+            keys.add(this.exposureKeys.getOrPut(exposure) { addExposure(exposure) })
+        }
+        return keys
+    }
+
+    private fun addExposure(exposure: Map<String, String>): String {
+        val hashedExposure = SecondaryExposure(
+            hashName(exposure["gate"] ?: ""),
+            exposure["gateValue"] ?: "",
+            exposure["ruleID"] ?: "",
+        )
+        val hashKey = Hashing.djb2("${hashedExposure.gate}:${hashedExposure.gateValue}:${hashedExposure.ruleID}")
+        if (!this.exposures.containsKey(hashKey)) {
+            this.exposures[hashKey] = hashedExposure
+        }
+        return hashKey
+    }
+
+    // Gates are evaluated before the entities that reference them, so the nested checks reuse their results
+    private fun evaluateInDependencyOrder(gates: Map<String, APIConfig>, configs: Map<String, APIConfig>) {
+        for (node in specs.dependencies.evaluationOrder) {
+            val configSpec = when (node.type) {
+                EntityType.GATE -> gates[node.name]
+                EntityType.CONFIG -> configs[node.name]
+                EntityType.LAYER -> specs.layerConfigs[node.name]
+            } ?: continue
+            if (isVisible(configSpec)) {
+                evaluationFor(node, configSpec)
             }
         }
-        return exposureKeys
+    }
+
+    private fun evaluationFor(node: SpecNode, configSpec: APIConfig): ConfigEvaluation {
+        return evaluations.getOrPut(node) {
+            val evalContext = context.asNewEvaluation()
+            evalFun(evalContext, configSpec)
+            evalContext.evaluation
+        }
+    }
+
+    private fun isVisible(configSpec: APIConfig): Boolean {
+        if (configSpec.entity == "segment" || configSpec.entity == "holdout") {
+            return false
+        }
+        return configSpecIsForThisTargetApp(configSpec)
     }
 
     private fun populateExperimentFields(
@@ -184,8 +227,8 @@ internal class EvaluationsFormatter(
         result.isInLayer = true
         result.explicitParameters = configSpec.explicitParameters ?: emptyArray()
 
-        val layerName = specStore.getLayerNameForExperiment(configName) ?: return
-        val layer = specStore.getLayerConfig(layerName) ?: return
+        val layerName = specs.getLayerNameForExperiment(configName) ?: return
+        val layer = specs.getLayerConfig(layerName) ?: return
 
         val layerValue = layer.defaultValue as Map<String, Any>
         val currentValue = result.value as Map<String, Any>
@@ -197,88 +240,57 @@ internal class EvaluationsFormatter(
         result.explicitParameters = configSpec.explicitParameters ?: emptyArray()
 
         if (delegate != null && delegate != "") {
-            val delegateSpec = specStore.getConfig(delegate)
-            var delegateContext = context.asNewEvaluation()
+            val delegateSpec = specs.getConfig(delegate)
             if (delegateSpec != null) {
-                evalFun(delegateContext, delegateSpec)
+                val delegateEvaluation = evaluationFor(SpecNode(EntityType.CONFIG, delegate), delegateSpec)
                 result.allocatedExperimentName = hashName(delegate)
-                result.isUserInExperiment = delegateContext.evaluation.isExperimentGroup
+                result.isUserInExperiment = delegateEvaluation.isExperimentGroup
                 result.isExperimentActive = delegateSpec.isActive
                 result.explicitParameters = delegateSpec.explicitParameters ?: emptyArray()
-                result.secondaryExposures = dedupeExposures(hashExposures(delegateContext.evaluation.secondaryExposures))
-                if (delegateContext.evaluation.groupName != null && delegateContext.evaluation.groupName != "") {
-                    result.groupName = delegateContext.evaluation.groupName
+                result.secondaryExposures = dedupeExposures(delegateEvaluation.secondaryExposures)
+                if (delegateEvaluation.groupName != null && delegateEvaluation.groupName != "") {
+                    result.groupName = delegateEvaluation.groupName
                 }
-            } else {
-                delegateContext.evaluation = ConfigEvaluation(
-                    evaluationDetails = EvaluationDetails(
-                        this.specStore.getLastUpdateTime(),
-                        this.specStore.getInitTime(),
-                        EvaluationReason.UNRECOGNIZED,
-                    ),
-                )
             }
         }
 
-        result.undelegatedSecondaryExposures = dedupeExposures(hashExposures(evalResult.undelegatedSecondaryExposures))
-    }
-
-    private fun hashExposures(exposures: ArrayList<Map<String, String>>): ArrayList<Map<String, String>> {
-        val hashedExposures = ArrayList<Map<String, String>>()
-
-        for (exposure in exposures) {
-            val hashedExposure = mapOf(
-                "gate" to hashName(exposure["gate"] ?: ""),
-                "gateValue" to (exposure["gateValue"] ?: ""),
-                "ruleID" to (exposure["ruleID"] ?: ""),
-            )
-            hashedExposures.add(hashedExposure)
-        }
-
-        return hashedExposures
+        result.undelegatedSecondaryExposures = dedupeExposures(evalResult.undelegatedSecondaryExposures)
     }
 
-    private fun configToResponse(configName: String, configSpec: APIConfig): EvaluationClientConfig? {
-        if (configSpec.entity == "segment" || configSpec.entity == "holdout") {
+    private fun configToResponse(type: EntityType, configName: String, configSpec: APIConfig): EvaluationClientConfig? {
+        if (!isVisible(configSpec)) {
             return null
         }
 
-        if (!configSpecIsForThisTargetApp(configSpec)) {
-            return null
-        }
-
-        val evalContext = context.asNewEvaluation()
-        evalFun(evalContext, configSpec)
+        val evaluation = evaluationFor(SpecNode(type, configName), configSpec)
         val hashedName = hashName(configName)
 
-        val hashedExposures = hashExposures(evalContext.evaluation.secondaryExposures)
-
         val result = EvaluationClientConfig(
             hashedName,
             "value" to false,
-            evalContext.evaluation.ruleID,
-            dedupeExposures(hashedExposures),
+            evaluation.ruleID,
+            dedupeExposures(evaluation.secondaryExposures),
         )
         val category = configSpec.type
         val entityType = configSpec.entity
         if (category == "feature_gate") {
-            result.value = evalContext.evaluation.booleanValue
+            result.value = evaluation.booleanValue
             return result
         } else if (category == "dynamic_config") {
-            result.value = evalContext.evaluation.jsonValue ?: emptyMap<Any, Any>()
-            if (evalContext.evaluation.groupName != null && evalContext.evaluation.groupName != "") {
-                result.groupName = evalContext.evaluation.groupName
+            result.value = evaluation.jsonValue ?: emptyMap<Any, Any>()
+            if (evaluation.groupName != null && evaluation.groupName != "") {
+                result.groupName = evaluation.groupName
             }
 
             if (entityType == "experiment") {
                 populateExperimentFields(
                     configName,
                     configSpec,
-                    evalContext.evaluation,
+                    evaluation,
                     result,
                 )
             } else if (entityType == "layer") {
-                populateLayerFields(configSpec, evalContext.evaluation, result)
+                populateLayerFields(configSpec, evaluation, result)
             }
             return result
         }
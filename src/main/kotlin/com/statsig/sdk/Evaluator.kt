@@ -2,21 +2,16 @@ package com.statsig.sdk
 
 import com.statsig.sdk.network.StatsigTransport
 import com.statsig.sdk.persistent_storage.PersistedValues
+import com.statsig.sdk.persistent_storage.PersistentStorageWriteMetrics
 import com.statsig.sdk.persistent_storage.UserPersistentStorageHandler
 import ip3country.CountryLookup
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.launch
 import ua_parser.Parser
 import java.lang.IllegalStateException
-import java.lang.Long.parseLong
-import java.lang.NumberFormatException
-import java.nio.ByteBuffer
 import java.security.MessageDigest
-import java.time.Instant
-import java.time.format.DateTimeFormatter
 import java.util.Base64
-import java.util.Calendar
-import java.util.Date
+import java.util.concurrent.ConcurrentHashMap
 import kotlin.collections.set
 
 internal class UnsupportedException(message: String) : Exception(message)
@@ -38,16 +33,12 @@ internal class Evaluator(
         }
     }
     private val persistentStore: UserPersistentStorageHandler
-    private var gateOverrides: MutableMap<String, MutableMap<String?, Boolean>> = HashMap()
-    private var configOverrides: MutableMap<String, MutableMap<String?, Map<String, Any>>> = HashMap()
-    private var layerOverrides: MutableMap<String, MutableMap<String?, Map<String, Any>>> = HashMap()
-    private var hashLookupTable: MutableMap<String, ULong> = HashMap()
+    private val overrides = OverrideRegistry()
+    internal val evaluationCache = if (options.evaluationCacheSize > 0) EvaluationCache(options.evaluationCacheSize) else null
+    private var hashLookupTable: MutableMap<BucketHashKey, ULong> = ConcurrentHashMap()
     private val gson = Utils.getGson()
     private val logger = options.customLogger
 
-    private val calendarOne = Calendar.getInstance()
-    private val calendarTwo = Calendar.getInstance()
-
     var isInitialized: Boolean = false
 
     init {
@@ -66,7 +57,8 @@ internal class Evaluator(
         )
         persistentStore = UserPersistentStorageHandler(
             options.userPersistentStorage,
-        )
+            statsigScope,
+        ) { errorBoundary.logException("persistentStorageWrite", it) }
         transport.setDiagnostics(diagnostics)
         statsigScope.launch {
             uaParser // This will cause the 'lazy' load to occur on a BG thread
@@ -81,6 +73,15 @@ internal class Evaluator(
 
     fun shutdown() {
         specStore.shutdown()
+        persistentStore.shutdown()
+    }
+
+    fun flushPersistentWrites() {
+        persistentStore.flush()
+    }
+
+    fun getPersistentStorageWriteMetrics(): PersistentStorageWriteMetrics {
+        return persistentStore.getWriteMetrics()
     }
 
     suspend fun syncConfigSpecs(): ConfigSyncDetails {
@@ -90,6 +91,14 @@ internal class Evaluator(
         return specStore.syncConfigSpecs()
     }
 
+    // Nested and delegate evaluations write into the same ConfigEvaluation, so reuse its details when the reason matches
+    private fun setEvaluationDetails(ctx: EvaluationContext, reason: EvaluationReason) {
+        if (ctx.evaluation.evaluationDetails?.reason == reason) {
+            return
+        }
+        ctx.evaluation.evaluationDetails = createEvaluationDetails(reason)
+    }
+
     private fun createEvaluationDetails(reason: EvaluationReason): EvaluationDetails {
         if (reason == EvaluationReason.UNINITIALIZED) {
             return EvaluationDetails(0, 0, reason)
@@ -120,9 +129,16 @@ internal class Evaluator(
     // check if a user is overridden to any group for the experiment
     fun isUserOverriddenToExperiment(user: StatsigUser, expName: String): Boolean {
         val config = specStore.getConfig(expName) ?: return false
+        val context = EvaluationContext(user)
         for (rule in config.rules) {
             if (rule.id.contains("override", ignoreCase = true)) {
-                val context = EvaluationContext(user)
+                if (rule.overrideIndex != null) {
+                    if (passesIndexedOverride(context, rule)) {
+                        return true
+                    }
+                    continue
+                }
+                context.evaluation = ConfigEvaluation()
                 evaluateRule(context, rule)
                 if (context.evaluation.booleanValue) {
                     // user is overridden into the experiment
@@ -139,6 +155,10 @@ internal class Evaluator(
         for (rule in config.rules) {
             if (rule.id.equals("layerAssignment", ignoreCase = true)) {
                 val context = EvaluationContext(user)
+                rule.bucketAllocation?.let {
+                    // user is in an experiment when they FAIL the layerAssignment rule
+                    return it.ruleFor(getUserBucket(context, it)) != 0
+                }
                 evaluateRule(context, rule)
                 // user is in an experiment when they FAIL the layerAssignment rule
                 return !context.evaluation.booleanValue
@@ -148,36 +168,33 @@ internal class Evaluator(
     }
 
     fun overrideGate(gateName: String, gateValue: Boolean, forID: String?) {
-        val userOverrides = gateOverrides.getOrPut(gateName) { HashMap() }
-        userOverrides[forID] = gateValue
+        overrides.setGate(gateName, gateValue, forID)
     }
 
     fun overrideConfig(configName: String, configValue: Map<String, Any>, forID: String?) {
-        val userOverrides = configOverrides.getOrPut(configName) { HashMap() }
-        userOverrides[forID] = configValue
+        overrides.setConfig(configName, configValue, forID)
     }
 
     fun overrideLayer(layerName: String, layerValue: Map<String, Any>, forID: String?) {
-        val userOverrides = layerOverrides.getOrPut(layerName) { HashMap() }
-        userOverrides[forID] = layerValue
+        overrides.setLayer(layerName, layerValue, forID)
     }
 
     fun removeLayerOverride(layerName: String, forID: String?) {
-        layerOverrides[layerName]?.remove(forID)
+        overrides.removeLayer(layerName, forID)
     }
 
     fun removeConfigOverride(configName: String, forID: String?) {
-        configOverrides[configName]?.remove(forID)
+        overrides.removeConfig(configName, forID)
     }
 
     fun removeGateOverride(gateName: String, forID: String?) {
-        gateOverrides[gateName]?.remove(forID)
+        overrides.removeGate(gateName, forID)
     }
 
     fun getConfig(ctx: EvaluationContext, dynamicConfigName: String) {
-        if (configOverrides.containsKey(dynamicConfigName)) {
-            ctx.evaluation.jsonValue = configOverrides[dynamicConfigName]?.let { lookupConfigBasedOverride(it, ctx.user) }
-                ?: mapOf<String, Any>()
+        val configOverride = overrides.getConfig(dynamicConfigName)
+        if (configOverride != null) {
+            ctx.evaluation.jsonValue = configOverride.lookup(ctx.user) ?: mapOf<String, Any>()
             ctx.evaluation.evaluationDetails = this.createEvaluationDetails((EvaluationReason.LOCAL_OVERRIDE))
             return
         }
@@ -187,13 +204,21 @@ internal class Evaluator(
             return
         }
 
-        val config = specStore.getConfig(dynamicConfigName)
+        val config = specsFor(ctx).getConfig(dynamicConfigName)
         if (config == null) {
             ctx.evaluation = this.getUnrecognizedEvaluation()
             return
         }
         ctx.apiConfig = config
+        val cacheKey = cacheKeyFor(ctx, EntityType.CONFIG, config)
+        if (cacheKey != null && useCachedResult(ctx, cacheKey)) {
+            // What evaluating does besides setting the result, without persisted values
+            this.persistentStore.delete(ctx.user, config.idType, config.name)
+            this.rememberGateResult(ctx, config)
+            return
+        }
         this.evaluateConfig(ctx, config)
+        cacheKey?.let { evaluationCache?.put(specsFor(ctx), it, ctx.evaluation) }
     }
 
     suspend fun getUserPersistedValues(user: StatsigUser, idType: String): PersistedValues {
@@ -221,7 +246,17 @@ internal class Evaluator(
         hash: HashAlgo = HashAlgo.SHA256,
         clientSDKKey: String? = null,
     ): ClientInitializeResponse {
-        var context = EvaluationContext(user, clientSDKKey = clientSDKKey, hash = hash)
+        var context = EvaluationContext(
+            user,
+            clientSDKKey = clientSDKKey,
+            hash = hash,
+            specs = specStore.getSnapshot(),
+            nestedGateResults = HashMap(),
+            bucketHashes = HashMap(),
+            overrideMatches = OverrideMatches(),
+            conditionMemo = ConditionMemo(),
+            preparedUser = PreparedUser(user),
+        )
         val response = ClientInitializeFormatter(
             this.specStore,
             this::evaluateConfig,
@@ -247,7 +282,17 @@ internal class Evaluator(
         hash: HashAlgo = HashAlgo.SHA256,
         clientSDKKey: String? = null,
     ): EvaluationsResponse {
-        var context = EvaluationContext(user, clientSDKKey = clientSDKKey, hash = hash)
+        var context = EvaluationContext(
+            user,
+            clientSDKKey = clientSDKKey,
+            hash = hash,
+            specs = specStore.getSnapshot(),
+            nestedGateResults = HashMap(),
+            bucketHashes = HashMap(),
+            overrideMatches = OverrideMatches(),
+            conditionMemo = ConditionMemo(),
+            preparedUser = PreparedUser(user),
+        )
         val response = EvaluationsFormatter(
             this.specStore,
             this::evaluateConfig,
@@ -279,12 +324,15 @@ internal class Evaluator(
     }
 
     private fun cleanExposures(exposures: ArrayList<Map<String, String>>): ArrayList<Map<String, String>> {
+        if (!needsCleaning(exposures)) {
+            return exposures
+        }
         val res: ArrayList<Map<String, String>> = ArrayList()
         val seen = mutableSetOf<String>()
         exposures.forEach { map ->
             val gate = map["gate"]
             if (gate != null && gate.startsWith("segment:")) return@forEach
-            val key = "${map["gate"]}|${map["gateValue"]}|${map["ruleID"]}"
+            val key = SecondaryExposure.dedupeKeyOf(map)
             if (!seen.contains(key)) {
                 seen.add(key)
                 res.add(map)
@@ -293,9 +341,33 @@ internal class Evaluator(
         return res
     }
 
+    // Most evaluations have a handful of distinct exposures, so check in place before building a deduped copy
+    private fun needsCleaning(exposures: ArrayList<Map<String, String>>): Boolean {
+        if (exposures.size > 16) {
+            return true
+        }
+        for (i in exposures.indices) {
+            val exposure = exposures[i]
+            if (exposure["gate"]?.startsWith("segment:") == true) {
+                return true
+            }
+            for (j in 0 until i) {
+                val other = exposures[j]
+                if (exposure["gate"] == other["gate"] &&
+                    exposure["gateValue"] == other["gateValue"] &&
+                    exposure["ruleID"] == other["ruleID"]
+                ) {
+                    return true
+                }
+            }
+        }
+        return false
+    }
+
     fun getLayer(ctx: EvaluationContext, layerName: String) {
-        if (layerOverrides.containsKey(layerName)) {
-            val value = layerOverrides[layerName]?.let { lookupConfigBasedOverride(it, ctx.user) } ?: mapOf()
+        val layerOverride = overrides.getLayer(layerName)
+        if (layerOverride != null) {
+            val value = layerOverride.lookup(ctx.user) ?: mapOf()
             ctx.evaluation.jsonValue = value
             ctx.evaluation.evaluationDetails = this.createEvaluationDetails(EvaluationReason.LOCAL_OVERRIDE)
             return
@@ -307,14 +379,20 @@ internal class Evaluator(
             return
         }
 
-        val layer = specStore.getLayerConfig(layerName)
+        val layer = specsFor(ctx).getLayerConfig(layerName)
         if (layer == null) {
             ctx.evaluation = this.getUnrecognizedEvaluation()
             logger.debug("Layer not found: $layerName, returning unrecognized evaluation")
             return
         }
         ctx.apiConfig = layer
+        val cacheKey = cacheKeyFor(ctx, EntityType.LAYER, layer)
+        if (cacheKey != null && useCachedResult(ctx, cacheKey)) {
+            this.persistentStore.delete(ctx.user, layer.idType, layer.name)
+            return
+        }
         this.evaluateLayer(ctx, layer)
+        cacheKey?.let { evaluationCache?.put(specsFor(ctx), it, ctx.evaluation) }
     }
 
     fun getExperimentsInLayer(layerName: String): Array<String> {
@@ -323,8 +401,9 @@ internal class Evaluator(
 
     @JvmOverloads
     fun checkGate(ctx: EvaluationContext, gateName: String) {
-        if (gateOverrides.containsKey(gateName)) {
-            val value = gateOverrides[gateName]?.let { lookUpGateOverride(it, ctx.user) } ?: false
+        val gateOverride = overrides.getGate(gateName)
+        if (gateOverride != null) {
+            val value = gateOverride.lookup(ctx.user) ?: false
             ctx.evaluation.booleanValue = value
             ctx.evaluation.jsonValue = value
             ctx.evaluation.evaluationDetails = createEvaluationDetails(EvaluationReason.LOCAL_OVERRIDE)
@@ -337,15 +416,48 @@ internal class Evaluator(
             return
         }
 
-        val gate = specStore.getGate(gateName)
+        val gate = specsFor(ctx).getGate(gateName)
         if (gate == null) {
             logger.debug("Gate not found: $gateName, returning unrecognized evaluation")
             ctx.evaluation = this.getUnrecognizedEvaluation()
             return
         }
         ctx.apiConfig = gate
+        val cacheKey = cacheKeyFor(ctx, EntityType.GATE, gate)
+        if (cacheKey != null && useCachedResult(ctx, cacheKey)) {
+            return
+        }
         this.evaluate(ctx, gate)
         this.finalizeEvaluation(ctx)
+        cacheKey?.let { evaluationCache?.put(specsFor(ctx), it, ctx.evaluation) }
+    }
+
+    // Only results decided by the specs and the user's attributes are cached: no local overrides,
+    // persisted values, target app or partial evaluation
+    private fun cacheKeyFor(ctx: EvaluationContext, type: EntityType, config: APIConfig): EvaluationCache.Key? {
+        val cache = evaluationCache ?: return null
+        if (ctx.isNested || ctx.onlyEvaluateTargeting || ctx.onlyEvaluateOverrides || ctx.clientSDKKey != null ||
+            ctx.persistedValues != null || ctx.persistentAssignmentOptions != null || !overrides.isEmpty()
+        ) {
+            return null
+        }
+        return cache.keyFor(specsFor(ctx), specStore.getSnapshot(), SpecNode(type, config.name), ctx.user)
+    }
+
+    private fun useCachedResult(ctx: EvaluationContext, key: EvaluationCache.Key): Boolean {
+        val cached = evaluationCache?.get(specsFor(ctx), key) ?: return false
+        // Sync and server times are those of this call, as is the source unless the spec was unsupported
+        val reason = cached.evaluationDetails?.reason
+        cached.evaluationDetails = createEvaluationDetails(
+            if (reason == EvaluationReason.UNSUPPORTED) reason else specStore.getEvaluationReason(),
+        )
+        ctx.evaluation = cached
+        return true
+    }
+
+    // Pins the context to the current specs so nested and delegate lookups agree
+    private fun specsFor(ctx: EvaluationContext): SpecSnapshot {
+        return ctx.specs ?: specStore.getSnapshot().also { ctx.specs = it }
     }
 
     private fun getUnrecognizedEvaluation(): ConfigEvaluation {
@@ -360,9 +472,23 @@ internal class Evaluator(
 
     private fun evaluateConfig(ctx: EvaluationContext, config: APIConfig) {
         this.evaluateConfigImpl(ctx, config)
+        this.rememberGateResult(ctx, config)
         this.finalizeEvaluation(ctx)
     }
 
+    // Without an override, a gate evaluated on its own gives the same result as a pass_gate/fail_gate
+    // reference to it, so later references in the same response can reuse it
+    private fun rememberGateResult(ctx: EvaluationContext, config: APIConfig) {
+        val results = ctx.nestedGateResults ?: return
+        if (config.type != "feature_gate" || ctx.isNested || ctx.onlyEvaluateTargeting || ctx.onlyEvaluateOverrides) {
+            return
+        }
+        if (overrides.getGate(config.name) != null || results.containsKey(config.name)) {
+            return
+        }
+        results[config.name] = ctx.evaluation
+    }
+
     private fun evaluateConfigImpl(ctx: EvaluationContext, config: APIConfig) {
         val persistedValues = ctx.persistedValues
         if (persistedValues == null || !config.isActive) {
@@ -395,38 +521,6 @@ internal class Evaluator(
         }
     }
 
-    private fun <T> lookupOverride(
-        userOverrides: MutableMap<String?, T>,
-        user: StatsigUser,
-    ): T? {
-        val overrideVal = user.userID?.let { userOverrides[it] }
-        if (overrideVal != null) {
-            return overrideVal
-        }
-
-        user.customIDs?.forEach { (_, customIdVal) ->
-            userOverrides[customIdVal]?.let {
-                return it
-            }
-        }
-
-        return null
-    }
-
-    private fun lookUpGateOverride(
-        userOverrides: MutableMap<String?, Boolean>,
-        user: StatsigUser
-    ): Boolean {
-        return lookupOverride(userOverrides, user) ?: userOverrides[null] ?: false
-    }
-
-    private fun lookupConfigBasedOverride(
-        userOverrides: MutableMap<String?, Map<String, Any>>,
-        user: StatsigUser
-    ): Map<String, Any> {
-        return lookupOverride(userOverrides, user) ?: userOverrides[null] ?: mapOf()
-    }
-
     private fun evaluateLayer(ctx: EvaluationContext, config: APIConfig) {
         this.evaluateLayerImpl(ctx, config)
         this.finalizeEvaluation(ctx)
@@ -446,7 +540,7 @@ internal class Evaluator(
             logger.debug("Sticky Evaluation found for layer: ${config.name} with value: $stickyValues")
             val stickyEvaluation = ConfigEvaluation.fromStickyValues(stickyValues, this.specStore.getInitTime())
             val delegate = stickyEvaluation.configDelegate
-            val delegateSpec = if (delegate != null) this.specStore.getConfig(delegate) else null
+            val delegateSpec = if (delegate != null) specsFor(ctx).getConfig(delegate) else null
             if (delegateSpec != null && delegateSpec.isActive) {
                 if (this.evaluateShouldReturnSticky(ctx, delegateSpec)) {
                     ctx.evaluation = stickyEvaluation
@@ -462,7 +556,7 @@ internal class Evaluator(
 
         this.evaluate(ctx, config)
         val delegate = ctx.evaluation.configDelegate
-        val delegateSpec = if (delegate != null) this.specStore.getConfig(delegate) else null
+        val delegateSpec = if (delegate != null) specsFor(ctx).getConfig(delegate) else null
         if (delegateSpec != null && delegateSpec.isActive) {
             if (ctx.evaluation.isExperimentGroup) {
                 this.persistentStore.save(
@@ -499,7 +593,7 @@ internal class Evaluator(
     }
 
     private fun evaluate(ctx: EvaluationContext, config: APIConfig) {
-        ctx.evaluation.evaluationDetails = createEvaluationDetails(specStore.getEvaluationReason())
+        setEvaluationDetails(ctx, specStore.getEvaluationReason())
         ctx.evaluation.configVersion = config.version
         ctx.evaluation.isActive = config.isActive
         ctx.evaluation.idType = config.idType
@@ -512,6 +606,14 @@ internal class Evaluator(
             return
         }
 
+        // A constant outcome covers all of the rules, not those left by filtering
+        val filtered = !ctx.isNested && (ctx.onlyEvaluateTargeting || ctx.onlyEvaluateOverrides)
+        val constant = config.constantOutcome
+        if (constant != null && !filtered && appliesTo(ctx, constant)) {
+            constant.applyTo(ctx.evaluation)
+            return
+        }
+
         var rules = config.rules
         if (ctx.onlyEvaluateTargeting && !ctx.isNested) {
             rules = rules.filter { it.isTargetingRule() }.toTypedArray()
@@ -530,8 +632,36 @@ internal class Evaluator(
             }
         }
 
-        for (rule in rules) {
-            this.evaluateRule(ctx, rule)
+        // Rules can't be dropped from a filtered list, where the ones after a passing rule still run
+        val specialized = config.specializedRules
+        if (rules === config.rules && specialized != null && inSpecializedEnvironment(ctx, specialized.specialization)) {
+            rules = specialized.rules
+        }
+        // Allocation runs span consecutive rules, which specializing keeps together
+        val allocatable = rules === config.rules || rules === specialized?.rules
+
+        var index = 0
+        while (index < rules.size) {
+            var rule = rules[index]
+            val allocation = if (allocatable) rule.bucketAllocation else null
+            val constant = rule.environmentResult
+            if (allocation != null) {
+                val matched = allocation.ruleFor(getUserBucket(ctx, allocation))
+                if (matched == BucketAllocation.NO_RULE) {
+                    applyRule(ctx, rules[index + allocation.ruleCount - 1], false)
+                    index += allocation.ruleCount
+                    continue
+                }
+                rule = rules[index + matched]
+                applyRule(ctx, rule, true)
+            } else if (constant != null && inSpecializedEnvironment(ctx, constant.specialization)) {
+                applyRule(ctx, rule, constant.value)
+            } else if (rule.overrideIndex != null) {
+                applyRule(ctx, rule, passesIndexedOverride(ctx, rule))
+            } else {
+                this.evaluateRule(ctx, rule)
+            }
+            index++
 
             if (ctx.evaluation.evaluationDetails?.reason == EvaluationReason.UNSUPPORTED) {
                 return
@@ -549,13 +679,8 @@ internal class Evaluator(
                 } else if (rule.passPercentage == 100.0) {
                     true
                 } else {
-                    computeUserHash(
-                        config.salt +
-                            '.' +
-                            (rule.salt ?: rule.id) +
-                            '.' +
-                            (ctx.user.getID(rule.idType) ?: Const.EMPTY_STR),
-                    )
+                    val hasher = rule.bucketHasher ?: BucketHasher.forRule(config, rule)
+                    computeUserHash(ctx, hasher, getUnitID(ctx, rule.idAttribute, rule.idType) ?: Const.EMPTY_STR)
                         .mod(10000UL) < (rule.passPercentage.times(100.0)).toULong()
                 }
 
@@ -582,23 +707,34 @@ internal class Evaluator(
         rule: APIRule,
     ): Boolean {
         val configDelegate = rule.configDelegate ?: return false
-        val config = specStore.getConfig(configDelegate) ?: return false
+        val config = specsFor(ctx).getConfig(configDelegate) ?: return false
 
-        val delegateCtx = ctx.asDelegate()
-        this.evaluate(delegateCtx, config)
+        // Evaluate the delegate in place rather than on a copied context, restoring the evaluation afterwards
+        val evaluation = ctx.evaluation
+        evaluation.isDelegate = true
+        this.evaluate(ctx, config)
+        val delegateEvaluation = ctx.evaluation
+        ctx.evaluation = evaluation
 
         ctx.evaluation.configDelegate = rule.configDelegate
         ctx.evaluation.explicitParameters = config.explicitParameters ?: arrayOf()
-        ctx.evaluation.evaluationDetails = this.createEvaluationDetails(this.specStore.getEvaluationReason())
-        ctx.evaluation.isExperimentGroup = delegateCtx.evaluation.isExperimentGroup
+        setEvaluationDetails(ctx, this.specStore.getEvaluationReason())
+        ctx.evaluation.isExperimentGroup = delegateEvaluation.isExperimentGroup
         return true
     }
 
     private fun evaluateRule(ctx: EvaluationContext, rule: APIRule) {
         var pass = true
         for (condition in rule.conditions) {
+            val folded = condition.environmentResult
+            if (folded != null && inSpecializedEnvironment(ctx, folded.specialization)) {
+                if (!folded.value) {
+                    pass = false
+                }
+                continue
+            }
             try {
-                if (!this.evaluateCondition(ctx, condition)) {
+                if (!this.evaluateSharedCondition(ctx, condition)) {
                     pass = false
                 }
             } catch (e: UnsupportedException) {
@@ -607,6 +743,23 @@ internal class Evaluator(
             }
         }
 
+        applyRule(ctx, rule, pass)
+    }
+
+    // A condition repeated across specs is evaluated once per user when the context carries a memo
+    private fun evaluateSharedCondition(ctx: EvaluationContext, condition: APICondition): Boolean {
+        val shared = condition.shared
+        val memo = ctx.conditionMemo
+        if (shared == null || memo == null) {
+            return this.evaluateCondition(ctx, condition)
+        }
+        memo.get(shared)?.let {
+            return it
+        }
+        return this.evaluateCondition(ctx, condition).also { memo.put(shared, it) }
+    }
+
+    private fun applyRule(ctx: EvaluationContext, rule: APIRule, pass: Boolean) {
         ctx.evaluation.booleanValue = pass
         ctx.evaluation.jsonValue = rule.returnValue
         ctx.evaluation.ruleID = rule.id
@@ -614,6 +767,106 @@ internal class Evaluator(
         ctx.evaluation.isExperimentGroup = rule.isExperimentGroup == true
     }
 
+    private fun inSpecializedEnvironment(ctx: EvaluationContext, specialization: EnvironmentSpecialization): Boolean {
+        if (ctx.environmentSpecialization !== specialization) {
+            ctx.inSpecializedEnvironment = specialization.matches(ctx.user)
+            ctx.environmentSpecialization = specialization
+        }
+        return ctx.inSpecializedEnvironment
+    }
+
+    private fun passesIndexedOverride(ctx: EvaluationContext, rule: APIRule): Boolean {
+        val matches = ctx.overrideMatches ?: OverrideMatches().also { ctx.overrideMatches = it }
+        return matches.passes(ctx.user, rule)
+    }
+
+    private fun getUserBucket(ctx: EvaluationContext, allocation: BucketAllocation): Int {
+        val unitID = getUnitID(ctx, allocation.idAttribute, allocation.idType) ?: Const.EMPTY_STR
+        return computeUserHash(ctx, allocation.hasher, unitID).mod(1000UL).toInt()
+    }
+
+    // Resolves a gate referenced by a pass_gate/fail_gate condition and folds its exposures into the caller's
+    // evaluation. Results are memoized on the context, so a gate shared by many rules or entities (segments,
+    // holdouts) is evaluated once per user for the whole call.
+    private fun checkNestedGate(ctx: EvaluationContext, gateName: String): ConfigEvaluation {
+        val results = ctx.nestedGateResults ?: HashMap<String, ConfigEvaluation>().also { ctx.nestedGateResults = it }
+        val nestedEvaluation = results[gateName] ?: evaluateNestedGate(ctx, gateName).also { results[gateName] = it }
+
+        val evaluation = ctx.evaluation
+        for (exposure in nestedEvaluation.secondaryExposures) {
+            evaluation.addSecondaryExposure(exposure)
+        }
+        if (nestedEvaluation.hasSeenAnalyticalGates) {
+            evaluation.hasSeenAnalyticalGates = true
+        }
+        this.applyNestedGateFields(ctx, gateName, nestedEvaluation)
+        return nestedEvaluation
+    }
+
+    // Nested gates have always been evaluated into the caller's result, leaving the gate's details, version,
+    // isActive, idType, sampling rate and forwardAllExposures where the caller's rule doesn't set its own, and
+    // its rule ID until the caller's rule finishes. A memoized result leaves the same fields, as evaluating the
+    // gate again would.
+    private fun applyNestedGateFields(ctx: EvaluationContext, gateName: String, nestedEvaluation: ConfigEvaluation) {
+        val evaluation = ctx.evaluation
+        // A shared constant result has no details of its own, as their times change with each update
+        val details = nestedEvaluation.evaluationDetails ?: createEvaluationDetails(specStore.getEvaluationReason())
+        when (details.reason) {
+            EvaluationReason.UNRECOGNIZED -> return
+            EvaluationReason.LOCAL_OVERRIDE, EvaluationReason.UNINITIALIZED -> {
+                evaluation.evaluationDetails = details
+                return
+            }
+            else -> {}
+        }
+        val gate = specsFor(ctx).getGate(gateName) ?: return
+        evaluation.evaluationDetails = details
+        evaluation.configVersion = gate.version
+        evaluation.isActive = gate.isActive
+        evaluation.idType = gate.idType
+        evaluation.ruleID = nestedEvaluation.ruleID
+        // Set by the rule that matched, if any
+        val matchedRule = nestedEvaluation.ruleID != Const.DEFAULT && nestedEvaluation.ruleID != Const.DISABLED
+        if (details.reason != EvaluationReason.UNSUPPORTED && matchedRule) {
+            evaluation.samplingRate = nestedEvaluation.samplingRate
+        }
+        gate.forwardAllExposures?.let { evaluation.forwardAllExposures = it }
+    }
+
+    // Evaluates the gate on the caller's context, but into its own ConfigEvaluation so it can be reused
+    private fun evaluateNestedGate(ctx: EvaluationContext, gateName: String): ConfigEvaluation {
+        constantNestedGate(ctx, gateName)?.let {
+            return it
+        }
+        val evaluation = ctx.evaluation
+        val apiConfig = ctx.apiConfig
+        val isNested = ctx.isNested
+        ctx.evaluation = ConfigEvaluation()
+        ctx.isNested = true
+        try {
+            this.checkGate(ctx, gateName)
+            return ctx.evaluation
+        } finally {
+            ctx.evaluation = evaluation
+            ctx.apiConfig = apiConfig
+            ctx.isNested = isNested
+        }
+    }
+
+    // Every user gets the same nested result from a constant gate, so it's shared rather than evaluated
+    private fun constantNestedGate(ctx: EvaluationContext, gateName: String): ConfigEvaluation? {
+        if (overrides.getGate(gateName) != null || specStore.getEvaluationReason() == EvaluationReason.UNINITIALIZED) {
+            return null
+        }
+        val constant = specsFor(ctx).getGate(gateName)?.constantOutcome ?: return null
+        return if (appliesTo(ctx, constant)) constant.nestedEvaluation else null
+    }
+
+    private fun appliesTo(ctx: EvaluationContext, constant: ConstantOutcome): Boolean {
+        val specialization = constant.specialization ?: return true
+        return inSpecializedEnvironment(ctx, specialization)
+    }
+
     private fun conditionFromString(input: String?): ConfigCondition {
         return when (input) {
             Const.PUBLIC -> ConfigCondition.PUBLIC
@@ -634,6 +887,9 @@ internal class Evaluator(
     private fun evaluateCondition(ctx: EvaluationContext, condition: APICondition): Boolean {
         try {
             var value: Any? = null
+            // The prepared attribute value was read from, when it was read as is
+            var source: UserAttribute? = null
+            val prepared = preparedUserFor(ctx)
             val field: String = Utils.toStringOrEmpty(condition.field)
             val conditionEnum: ConfigCondition? = try {
                 conditionFromString(condition.type.lowercase())
@@ -649,25 +905,25 @@ internal class Evaluator(
 
                 ConfigCondition.FAIL_GATE, ConfigCondition.PASS_GATE -> {
                     val name = Utils.toStringOrEmpty(condition.targetValue)
-                    val nestedCtx = ctx.asNested()
-                    this.checkGate(nestedCtx, name)
-                    val newExposure =
-                        mapOf(
-                            "gate" to name,
-                            "gateValue" to nestedCtx.evaluation.booleanValue.toString(),
-                            "ruleID" to nestedCtx.evaluation.ruleID,
-                        )
+                    val nestedEvaluation = this.checkNestedGate(ctx, name)
+                    // An overridden gate sets no rule, so its exposure has carried the rule ID the caller's result held
+                    val overridden = nestedEvaluation.evaluationDetails?.reason == EvaluationReason.LOCAL_OVERRIDE
+                    val newExposure = specsFor(ctx).secondaryExposures.get(
+                        name,
+                        nestedEvaluation.booleanValue,
+                        if (overridden) ctx.evaluation.ruleID else nestedEvaluation.ruleID,
+                    )
                     ctx.evaluation.addSecondaryExposure(newExposure)
-                    if (nestedCtx.evaluation.samplingRate == null && !name.startsWith("segment:")) {
+                    if (ctx.evaluation.samplingRate == null && !name.startsWith("segment:")) {
                         ctx.evaluation.hasSeenAnalyticalGates = true
                     }
-                    return if (conditionEnum == ConfigCondition.PASS_GATE) nestedCtx.evaluation.booleanValue else !nestedCtx.evaluation.booleanValue
+                    return if (conditionEnum == ConfigCondition.PASS_GATE) nestedEvaluation.booleanValue else !nestedEvaluation.booleanValue
                 }
 
                 ConfigCondition.IP_BASED -> {
-                    value = getFromUser(ctx.user, field)
+                    value = getUserValue(ctx, condition, field)
                     if (value == null && !options.disableIPResolution) {
-                        val ipString = getFromUser(ctx.user, "ip")?.toString()
+                        val ipString = UserField.IP.get(ctx.user)?.toString()
                         value = if (ipString == null) {
                             null
                         } else {
@@ -677,17 +933,21 @@ internal class Evaluator(
                 }
 
                 ConfigCondition.UA_BASED -> {
-                    value = getFromUser(ctx.user, field)
+                    value = getUserValue(ctx, condition, field)
                     if (value == null) {
                         value = getFromUserAgent(ctx.user, field)
                     }
                 }
 
                 ConfigCondition.USER_FIELD -> {
-                    value = getFromUser(ctx.user, field)
+                    value = getUserValue(ctx, condition, field)
+                    source = prepared?.let { condition.attribute }
                 }
 
                 ConfigCondition.CURRENT_TIME -> {
+                    condition.timeThreshold?.let {
+                        return it.passes(System.currentTimeMillis())
+                    }
                     value = System.currentTimeMillis().toString()
                 }
 
@@ -696,13 +956,14 @@ internal class Evaluator(
                 }
 
                 ConfigCondition.USER_BUCKET -> {
-                    val salt = getValueAsString(condition.additionalValues?.let { it["salt"] })
-                    val unitID = ctx.user.getID(condition.idType) ?: Const.EMPTY_STR
-                    value = computeUserHash("$salt.$unitID").mod(1000UL)
+                    val hasher = condition.bucketHasher ?: BucketHasher.forUserBucket(condition)
+                    val unitID = getUnitID(ctx, condition.idAttribute, condition.idType) ?: Const.EMPTY_STR
+                    value = computeUserHash(ctx, hasher, unitID).mod(1000UL)
                 }
 
                 ConfigCondition.UNIT_ID -> {
-                    value = ctx.user.getID(condition.idType)
+                    value = getUnitID(ctx, condition.idAttribute, condition.idType)
+                    source = prepared?.let { condition.idAttribute }
                 }
 
                 ConfigCondition.TARGET_APP -> {
@@ -721,7 +982,7 @@ internal class Evaluator(
 
             when (condition.operator) {
                 Const.GT -> {
-                    val doubleValue = getValueAsDouble(value)
+                    val doubleValue = getValueAsDouble(prepared, source, value)
                     val doubleTargetValue = getValueAsDouble(condition.targetValue)
                     if (doubleValue == null || doubleTargetValue == null) {
                         return false
@@ -730,7 +991,7 @@ internal class Evaluator(
                 }
 
                 Const.GTE -> {
-                    val doubleValue = getValueAsDouble(value)
+                    val doubleValue = getValueAsDouble(prepared, source, value)
                     val doubleTargetValue = getValueAsDouble(condition.targetValue)
                     if (doubleValue == null || doubleTargetValue == null) {
                         return false
@@ -739,7 +1000,7 @@ internal class Evaluator(
                 }
 
                 Const.LT -> {
-                    val doubleValue = getValueAsDouble(value)
+                    val doubleValue = getValueAsDouble(prepared, source, value)
                     val doubleTargetValue = getValueAsDouble(condition.targetValue)
                     if (doubleValue == null || doubleTargetValue == null) {
                         return false
@@ -748,7 +1009,7 @@ internal class Evaluator(
                 }
 
                 Const.LTE -> {
-                    val doubleValue = getValueAsDouble(value)
+                    val doubleValue = getValueAsDouble(prepared, source, value)
                     val doubleTargetValue = getValueAsDouble(condition.targetValue)
                     if (doubleValue == null || doubleTargetValue == null) {
                         return false
@@ -757,45 +1018,36 @@ internal class Evaluator(
                 }
 
                 Const.VERSION_GT -> {
-                    return versionCompareHelper(value, condition.targetValue) { v1: String, v2: String ->
-                        versionCompare(v1, v2) > 0
-                    }
+                    return versionCompareHelper(ctx, value, condition) { it > 0 }
                 }
 
                 Const.VERSION_GTE -> {
-                    return versionCompareHelper(value, condition.targetValue) { v1: String, v2: String ->
-                        versionCompare(v1, v2) >= 0
-                    }
+                    return versionCompareHelper(ctx, value, condition) { it >= 0 }
                 }
 
                 Const.VERSION_LT -> {
-                    return versionCompareHelper(value, condition.targetValue) { v1: String, v2: String ->
-                        versionCompare(v1, v2) < 0
-                    }
+                    return versionCompareHelper(ctx, value, condition) { it < 0 }
                 }
 
                 Const.VERSION_LTE -> {
-                    return versionCompareHelper(value, condition.targetValue) { v1: String, v2: String ->
-                        versionCompare(v1, v2) <= 0
-                    }
+                    return versionCompareHelper(ctx, value, condition) { it <= 0 }
                 }
 
                 Const.VERSION_EQ -> {
-                    return versionCompareHelper(value, condition.targetValue) { v1: String, v2: String ->
-                        versionCompare(v1, v2) == 0
-                    }
+                    return versionCompareHelper(ctx, value, condition) { it == 0 }
                 }
 
                 Const.VERSION_NEQ -> {
-                    return versionCompareHelper(value, condition.targetValue) { v1: String, v2: String ->
-                        versionCompare(v1, v2) != 0
-                    }
+                    return versionCompareHelper(ctx, value, condition) { it != 0 }
                 }
 
                 Const.ANY -> {
                     val strValue = getValueAsString(value) ?: return false
                     condition.segmentIdSet?.let {
-                        return it.contains(strValue.lowercase())
+                        return it.contains(lowercase(prepared, source, strValue))
+                    }
+                    condition.targetSet?.let {
+                        return it.containsString(strValue)
                     }
                     return matchStringInArray(value, condition.targetValue) { a, b ->
                         a.equals(b, true)
@@ -805,7 +1057,10 @@ internal class Evaluator(
                 Const.NONE -> {
                     val strValue = getValueAsString(value) ?: return true
                     condition.segmentIdSet?.let {
-                        return !it.contains(strValue.lowercase())
+                        return !it.contains(lowercase(prepared, source, strValue))
+                    }
+                    condition.targetSet?.let {
+                        return !it.containsString(strValue)
                     }
                     return !matchStringInArray(value, condition.targetValue) { a, b ->
                         a.equals(b, true)
@@ -813,36 +1068,60 @@ internal class Evaluator(
                 }
 
                 Const.ANY_CASE_SENSITIVE -> {
+                    condition.targetSet?.let {
+                        val strValue = getValueAsString(value) ?: return false
+                        return it.containsString(strValue)
+                    }
                     return matchStringInArray(value, condition.targetValue) { a, b ->
                         a.equals(b, false)
                     }
                 }
 
                 Const.NONE_CASE_SENSITIVE -> {
+                    condition.targetSet?.let {
+                        val strValue = getValueAsString(value) ?: return true
+                        return !it.containsString(strValue)
+                    }
                     return !matchStringInArray(value, condition.targetValue) { a, b ->
                         a.equals(b, false)
                     }
                 }
 
                 Const.STR_STARTS_WITH_ANY -> {
+                    condition.stringMatcher?.let {
+                        val strValue = getValueAsString(value) ?: return false
+                        return it.matches(strValue)
+                    }
                     return matchStringInArray(value, condition.targetValue) { a, b ->
                         a.startsWith(b, true)
                     }
                 }
 
                 Const.STR_ENDS_WITH_ANY -> {
+                    condition.stringMatcher?.let {
+                        val strValue = getValueAsString(value) ?: return false
+                        return it.matches(strValue)
+                    }
                     return matchStringInArray(value, condition.targetValue) { a, b ->
                         a.endsWith(b, true)
                     }
                 }
 
                 Const.STR_CONTAINS_ANY -> {
+                    condition.stringMatcher?.let {
+                        val strValue = getValueAsString(value) ?: return false
+                        return it.matches(strValue)
+                    }
                     return matchStringInArray(value, condition.targetValue) { a, b ->
                         a.contains(b, true)
                     }
                 }
 
                 Const.STR_CONTAINS_NONE -> {
+                    condition.stringMatcher?.let {
+                        val strValue = getValueAsString(value) ?: return true
+                        return !it.matches(strValue)
+                    }
                     return !matchStringInArray(value, condition.targetValue) { a, b ->
                         a.contains(b, true)
                     }
@@ -861,6 +1140,10 @@ internal class Evaluator(
                         return false
                     }
 
+                    condition.targetSet?.let {
+                        return it.containsAnyOf(value)
+                    }
+
                     val targetArray = condition.targetValue as? ArrayList<String>
                     if (targetArray != null) {
                         return arrayHasValue(value, targetArray)
@@ -874,6 +1157,10 @@ internal class Evaluator(
                         return false
                     }
 
+                    condition.targetSet?.let {
+                        return !it.containsAnyOf(value)
+                    }
+
                     val targetArray = condition.targetValue as? ArrayList<String>
                     if (targetArray != null) {
                         return !arrayHasValue(value, targetArray)
@@ -887,6 +1174,10 @@ internal class Evaluator(
                         return false
                     }
 
+                    condition.targetSet?.let {
+                        return it.isContainedIn(value)
+                    }
+
                     if (condition.targetValue == null) {
                         return false
                     }
@@ -899,6 +1190,10 @@ internal class Evaluator(
                         return false
                     }
 
+                    condition.targetSet?.let {
+                        return !it.isContainedIn(value)
+                    }
+
                     if (condition.targetValue == null) {
                         return false
                     }
@@ -915,38 +1210,25 @@ internal class Evaluator(
                 }
 
                 Const.BEFORE -> {
-                    return compareDates(
-                        { a: Date, b: Date ->
-                            return@compareDates a.before(b)
-                        },
-                        value,
-                        condition.targetValue,
-                    )
+                    val time = parseTimestamp(value)
+                    val targetTime = condition.targetTimestamp ?: parseTimestamp(condition.targetValue)
+                    return time != Timestamps.INVALID && targetTime != Timestamps.INVALID && time < targetTime
                 }
 
                 Const.AFTER -> {
-                    return compareDates(
-                        { a: Date, b: Date ->
-                            return@compareDates a.after(b)
-                        },
-                        value,
-                        condition.targetValue,
-                    )
+                    val time = parseTimestamp(value)
+                    val targetTime = condition.targetTimestamp ?: parseTimestamp(condition.targetValue)
+                    return time != Timestamps.INVALID && targetTime != Timestamps.INVALID && time > targetTime
                 }
 
                 Const.ON -> {
-                    return compareDates(
-                        { a: Date, b: Date ->
-                            calendarOne.time = a
-                            calendarTwo.time = b
-                            return@compareDates calendarOne[Calendar.YEAR] ==
-                                calendarTwo[Calendar.YEAR] &&
-                                calendarOne[Calendar.DAY_OF_YEAR] ==
-                                calendarTwo[Calendar.DAY_OF_YEAR]
-                        },
-                        value,
-                        condition.targetValue,
-                    )
+                    val time = parseTimestamp(value)
+                    val targetTime = condition.targetTimestamp ?: parseTimestamp(condition.targetValue)
+                    if (time == Timestamps.INVALID || targetTime == Timestamps.INVALID) {
+                        return false
+                    }
+                    val targetDay = condition.targetEpochDay ?: Timestamps.epochDay(targetTime)
+                    return Timestamps.epochDay(time) == targetDay
                 }
 
                 Const.IN_SEGMENT_LIST, Const.NOT_IN_SEGMENT_LIST -> {
@@ -1038,121 +1320,39 @@ internal class Evaluator(
         return false
     }
 
-    private fun compareDates(
-        compare: ((a: Date, b: Date) -> Boolean),
-        a: Any?,
-        b: Any?,
-    ): Boolean {
-        if (a == null || b == null) {
-            return false
-        }
-
-        val firstEpoch = getDate(a)
-        val secondEpoch = getDate(b)
-
-        if (firstEpoch == null || secondEpoch == null) {
-            return false
-        }
-        return compare(firstEpoch, secondEpoch)
-    }
-
-    private fun getEpoch(input: Any?): Long? {
-        var epoch =
-            when (input) {
-                is String -> parseLong(input)
-                is Number -> input.toLong()
-                else -> return null
-            }
-
-        if (epoch.toString().length < 11) {
-            // epoch in seconds (milliseconds would be before 1970)
-            epoch *= 1000
-        }
-
-        return epoch
-    }
-
-    private fun parseISOTimestamp(input: Any?): Date? {
-        if (input is String) {
-            return try {
-                val ta = DateTimeFormatter.ISO_INSTANT.parse(input)
-                val i = Instant.from(ta)
-                Date.from(i)
-            } catch (e: Exception) {
-                errorBoundary.logException("getDate", e)
-                null
-            }
-        }
-        return null
-    }
-
-    private fun getDate(input: Any?): Date? {
-        if (input == null) {
-            return null
-        }
+    private fun parseTimestamp(input: Any?): Long {
         return try {
-            val epoch: Long = getEpoch(input) ?: return parseISOTimestamp(input)
-            val instant = Instant.ofEpochMilli(epoch)
-            Date.from(instant)
+            Timestamps.parse(input)
         } catch (e: Exception) {
-            parseISOTimestamp(input)
-        }
-    }
-
-    private fun versionCompare(v1: String, v2: String): Int {
-        val parts1 = v1.split(".")
-        val parts2 = v2.split(".")
-
-        var i = 0
-        while (i < parts1.size.coerceAtLeast(parts2.size)) {
-            var c1 = 0
-            var c2 = 0
-            if (i < parts1.size) {
-                c1 = parts1[i].trim().toInt()
-            }
-            if (i < parts2.size) {
-                c2 = parts2[i].trim().toInt()
-            }
-            if (c1 < c2) {
-                return -1
-            } else if (c1 > c2) {
-                return 1
-            }
-            i++
+            errorBoundary.logException("getDate", e)
+            Timestamps.INVALID
         }
-        return 0
     }
 
-    private fun versionCompareHelper(
-        version1: Any?,
-        version2: Any?,
-        compare: (v1: String, v2: String) -> Boolean,
+    private inline fun versionCompareHelper(
+        ctx: EvaluationContext,
+        version: Any?,
+        condition: APICondition,
+        check: (comparison: Int) -> Boolean,
     ): Boolean {
-        var version1Str = getValueAsString(version1)
-        var version2Str = getValueAsString(version2)
-
-        if (version1Str == null || version2Str == null) {
-            return false
-        }
+        val targetVersion = condition.versionTarget ?: Version.parse(condition.targetValue) ?: return false
+        val userVersion = parseUserVersion(ctx, version) ?: return false
+        val comparison = userVersion.compareTo(targetVersion)
+        return comparison != Version.INCOMPARABLE && check(comparison)
+    }
 
-        val dashIndex1 = version1Str.indexOf('-')
-        if (dashIndex1 > 0) {
-            version1Str = version1Str.substring(0, dashIndex1)
+    // A user usually has one app version, so remember the last one parsed on this context
+    private fun parseUserVersion(ctx: EvaluationContext, version: Any?): Version? {
+        if (version == null) {
+            return null
         }
-
-        val dashIndex2 = version2Str.indexOf('-')
-        if (dashIndex2 > 0) {
-            version2Str = version2Str.substring(0, dashIndex2)
+        val parsed = ctx.parsedVersion
+        if (parsed != null && version == ctx.parsedVersionInput) {
+            return parsed
         }
-
-        return try {
-            compare(version1Str, version2Str)
-        } catch (e: NumberFormatException) {
-            false
-        } catch (e: Exception) {
-            errorBoundary.logException("versionCompareHelper", e)
-            logger.warn("An exception was caught:  $e")
-            false
+        return Version.parse(version)?.also {
+            ctx.parsedVersionInput = version
+            ctx.parsedVersion = it
         }
     }
 
@@ -1166,6 +1366,21 @@ internal class Evaluator(
         return input.toString()
     }
 
+    // Conversions of a value read as is from the prepared user are kept there
+    private fun getValueAsDouble(prepared: PreparedUser?, source: UserAttribute?, value: Any?): Double? {
+        if (prepared != null && source != null) {
+            return prepared.number(source)
+        }
+        return getValueAsDouble(value)
+    }
+
+    private fun lowercase(prepared: PreparedUser?, source: UserAttribute?, value: String): String {
+        if (prepared != null && source != null) {
+            return prepared.lowercase(source, value)
+        }
+        return value.lowercase()
+    }
+
     private fun getValueAsDouble(input: Any?): Double? {
         if (input == null) {
             return null
@@ -1219,7 +1434,7 @@ internal class Evaluator(
     }
 
     private fun getFromUserAgent(user: StatsigUser, field: String): String? {
-        val ua = getFromUser(user, "userAgent")?.toString() ?: return null
+        val ua = UserField.USER_AGENT.get(user)?.toString() ?: return null
         return when (field.lowercase()) {
             Const.OS_NAME, Const.OSNAME -> osFamilyFromUserAgent(ua)
             Const.OS_VERSION, Const.OSVERSION -> osVersionFromUserAgent(ua)
@@ -1259,32 +1474,31 @@ internal class Evaluator(
         ).joinToString(".")
     }
 
-    private fun getUserValueForField(user: StatsigUser, field: String): Any? {
-        return when (field) {
-            Const.USERID, Const.USER_ID -> user.userID
-            Const.EMAIL -> user.email
-            Const.IP, Const.IPADDRESS, Const.IP_ADDRESS -> user.ip
-            Const.USERAGENT, Const.USER_AGENT -> user.userAgent
-            Const.COUNTRY -> user.country
-            Const.LOCALE -> user.locale
-            Const.APPVERSION, Const.APP_VERSION -> user.appVersion
-            else -> null
-        }
+    // Calls over many entities prepare the user, so each attribute is read once
+    private fun preparedUserFor(ctx: EvaluationContext): PreparedUser? {
+        return ctx.preparedUser?.takeIf { it.user === ctx.user }
     }
 
-    private fun getFromUser(user: StatsigUser, field: String): Any? {
-        var value: Any? = getUserValueForField(user, field) ?: getUserValueForField(user, field.lowercase())
-
-        if ((value == null || value == Const.EMPTY_STR) && user.custom != null) {
-            value = user.custom?.get(field) ?: user.custom?.get(field.lowercase())
+    private fun getUserValue(ctx: EvaluationContext, condition: APICondition, field: String): Any? {
+        val attribute = condition.attribute
+        val prepared = preparedUserFor(ctx)
+        if (attribute != null && prepared != null) {
+            return prepared.get(attribute)
         }
-        if ((value == null || value == Const.EMPTY_STR) && user.privateAttributes != null) {
-            value =
-                user.privateAttributes?.get(field)
-                    ?: user.privateAttributes?.get(field.lowercase())
+        return userFieldOf(condition, field).get(ctx.user)
+    }
+
+    private fun getUnitID(ctx: EvaluationContext, attribute: UserAttribute?, idType: String?): String? {
+        val prepared = preparedUserFor(ctx)
+        if (attribute != null && prepared != null) {
+            return prepared.getID(attribute)
         }
+        return ctx.user.getID(idType)
+    }
 
-        return value
+    // Conditions from the spec store have their field resolved at load
+    private fun userFieldOf(condition: APICondition, field: String): UserField {
+        return condition.userField ?: UserField.of(field)
     }
 
     private fun getFromEnvironment(user: StatsigUser, field: String): String? {
@@ -1292,21 +1506,21 @@ internal class Evaluator(
             ?: user.statsigEnvironment?.get(field.lowercase())
     }
 
-    private fun computeUserHash(input: String): ULong {
-        hashLookupTable[input]?.let {
+    private fun computeUserHash(ctx: EvaluationContext, hasher: BucketHasher, unitID: String): ULong {
+        val key = BucketHashKey(hasher.prefix, unitID)
+        val memo = ctx.bucketHashes
+        memo?.get(key)?.let {
             return it
         }
 
-        val md = MessageDigest.getInstance(Const.CML_SHA_256)
-        val inputBytes = input.toByteArray()
-        val bytes = md.digest(inputBytes)
-        val hash = ByteBuffer.wrap(bytes).long.toULong()
-
-        if (hashLookupTable.size > 1000) {
-            hashLookupTable.clear()
+        val hash = hashLookupTable[key] ?: hasher.hash(unitID).also {
+            if (hashLookupTable.size > 1000) {
+                hashLookupTable.clear()
+            }
+            hashLookupTable[key] = it
         }
 
-        hashLookupTable[input] = hash
+        memo?.put(key, hash)
         return hash
     }
 }
@@ -0,0 +1,91 @@
+package com.statsig.sdk
+
+/**
+ * 64-bit fingerprints of user attribute values, for use as cache keys. Values are hashed in
+ * place without serializing or sorting. Map entries are combined with a commutative sum, so
+ * equal maps agree whatever their iteration order. Lists and arrays hash in order. Distinct
+ * values collide with a probability of about 2^-64.
+ */
+internal object Fingerprint {
+    const val SEED = -0x61c8864680b583ebL
+
+    private const val NULL = 0x2545f4914f6cdd1dL
+    private const val TRUE = 0x1b873593L
+    private const val FALSE = 0x3c6ef372L
+    private const val INTEGER = 0x5bd1e995L
+    private const val UNSIGNED = 0x27d4eb2fL
+    private const val FLOATING = 0x165667b1L
+    private const val MAP = 0x7f4a7c15L
+    private const val SEQUENCE = 0x52dce729L
+    private const val FNV_OFFSET = -0x340d631b7bdddcdbL
+    private const val FNV_PRIME = 0x100000001b3L
+
+    /**
+     * Adds [value] as the next field of a fingerprint that has reached [hash].
+     */
+    fun add(hash: Long, value: Any?): Long {
+        return (hash xor of(value)) * -0x4b47d5b1b8c1a7d5L + SEED
+    }
+
+    fun finish(hash: Long): Long {
+        return mix(hash)
+    }
+
+    fun of(value: Any?): Long {
+        return when (value) {
+            null -> NULL
+            is String -> ofString(value)
+            is Boolean -> if (value) TRUE else FALSE
+            is Long -> mix(value xor INTEGER)
+            is Int -> mix(value.toLong() xor INTEGER)
+            is Short -> mix(value.toLong() xor INTEGER)
+            is Byte -> mix(value.toLong() xor INTEGER)
+            is ULong -> mix(value.toLong() xor UNSIGNED)
+            is Double -> mix(value.toRawBits() xor FLOATING)
+            is Float -> mix(value.toDouble().toRawBits() xor FLOATING)
+            is Map<*, *> -> ofMap(value)
+            is Iterable<*> -> ofSequence(value.iterator())
+            is Array<*> -> ofSequence(value.iterator())
+            // Hashed with the class, so an object never matches a String with the same text
+            else -> mix(ofString(value.javaClass.name) * 31 + ofString(value.toString()))
+        }
+    }
+
+    private fun ofString(value: String): Long {
+        var hash = FNV_OFFSET
+        for (char in value) {
+            hash = (hash xor char.code.toLong()) * FNV_PRIME
+        }
+        return mix(hash xor value.length.toLong())
+    }
+
+    // Null values are skipped, as Utils.sortMap does for the djb2 hash
+    private fun ofMap(map: Map<*, *>): Long {
+        var sum = MAP
+        var count = 0L
+        for ((key, value) in map) {
+            if (value == null) {
+                continue
+            }
+            sum += mix(of(key) * 31 + of(value))
+            count++
+        }
+        return mix(sum xor count)
+    }
+
+    private fun ofSequence(values: Iterator<*>): Long {
+        var hash = SEQUENCE
+        for (value in values) {
+            hash = add(hash, value)
+        }
+        return mix(hash)
+    }
+
+    // The finalizer of MurmurHash3's 64-bit variant
+    private fun mix(value: Long): Long {
+        var hash = value
+        hash = (hash xor (hash ushr 33)) * -0xae502812aa7333L
+        hash = (hash xor (hash ushr 33)) * -0x3b314601e57a13adL
+        return hash xor (hash ushr 33)
+    }
+}
@@ -0,0 +1,57 @@
+package com.statsig.sdk
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.function.Supplier
+
+/**
+ * User attributes whose values come from suppliers, called the first time a condition reads
+ * the attribute and then kept for the life of the user.
+ */
+internal class LazyAttributes {
+    private val suppliers = ConcurrentHashMap<String, Supplier<out Any?>>()
+    private val values = ConcurrentHashMap<String, Any>()
+
+    fun put(key: String, supplier: Supplier<out Any?>) {
+        suppliers[key] = supplier
+        values.remove(key)
+    }
+
+    fun get(key: String): Any? {
+        values[key]?.let {
+            return if (it === NULL) null else it
+        }
+        val supplier = suppliers[key] ?: return null
+        val value = supplier.get()
+        // Two threads reading at once may both call the supplier, but agree on the first value
+        val kept = values.putIfAbsent(key, value ?: NULL) ?: return value
+        return if (kept === NULL) null else kept
+    }
+
+    /**
+     * A fingerprint of every supplied value, calling the suppliers not yet called.
+     */
+    fun fingerprint(): Long {
+        return Fingerprint.of(suppliers.keys.associateWith { get(it) })
+    }
+
+    /**
+     * [attributes] with the values supplied so far added, for logging without calling suppliers.
+     */
+    fun withSuppliedValues(attributes: Map<String, Any>?): Map<String, Any>? {
+        if (values.isEmpty()) {
+            return attributes
+        }
+        val merged = HashMap<String, Any>()
+        for ((key, value) in values) {
+            if (value !== NULL) {
+                merged[key] = value
+            }
+        }
+        attributes?.let { merged.putAll(it) }
+        return merged
+    }
+
+    private companion object {
+        val NULL = Any()
+    }
+}
@@ -0,0 +1,98 @@
+package com.statsig.sdk
+
+import java.util.Collections
+import java.util.IdentityHashMap
+
+/**
+ * Unit IDs listed by override rules across all specs, mapped to the rules that list them.
+ * An indexed rule is one whose only condition is unit_id "any", which passes exactly when
+ * the user's ID is in its list, so most users are ruled out by one lookup per ID type
+ * instead of a check per rule.
+ */
+internal class OverrideIndex private constructor(
+    // ID type -> case folded unit ID -> rules listing it
+    private val rulesByID: Map<String, Map<String, List<APIRule>>>,
+) {
+    /**
+     * The indexed rules the user passes, compared by identity.
+     */
+    fun rulesFor(user: StatsigUser): Set<APIRule> {
+        var rules: MutableSet<APIRule>? = null
+        for ((idType, byID) in rulesByID) {
+            val unitID = user.getID(idType) ?: continue
+            val listed = byID[TargetSet.fold(unitID)] ?: continue
+            val matched = rules ?: Collections.newSetFromMap(IdentityHashMap<APIRule, Boolean>()).also { rules = it }
+            matched.addAll(listed)
+        }
+        return rules ?: emptySet()
+    }
+
+    companion object {
+        val EMPTY = OverrideIndex(emptyMap())
+
+        private fun isIndexable(rule: APIRule): Boolean {
+            if (!Utils.toStringOrEmpty(rule.id).contains("override", ignoreCase = true)) {
+                return false
+            }
+            val condition = rule.conditions.singleOrNull() ?: return false
+            return Utils.toStringOrEmpty(condition.type).lowercase() == Const.UNIT_ID &&
+                condition.operator == Const.ANY &&
+                condition.segmentIdSet == null &&
+                condition.targetSet != null
+        }
+
+        /**
+         * Indexes the override rules of [specs] and points each indexed rule at the result.
+         */
+        fun build(vararg specs: Map<String, APIConfig>): OverrideIndex {
+            val rulesByID = HashMap<String, HashMap<String, MutableList<APIRule>>>()
+            val indexed = ArrayList<APIRule>()
+            for (configs in specs) {
+                for (config in configs.values) {
+                    for (rule in config.rules) {
+                        if (!isIndexable(rule)) {
+                            continue
+                        }
+                        indexed.add(rule)
+                        val condition = rule.conditions[0]
+                        for (target in condition.targetValue as Iterable<*>) {
+                            val unitID = target?.toString() ?: continue
+                            val byID = rulesByID.getOrPut(condition.idType) { HashMap() }
+                            val rules = byID.getOrPut(TargetSet.fold(unitID)) { ArrayList(1) }
+                            if (rules.none { it === rule }) {
+                                rules.add(rule)
+                            }
+                        }
+                    }
+                }
+            }
+            if (rulesByID.isEmpty()) {
+                return EMPTY
+            }
+            val index = OverrideIndex(rulesByID)
+            for (rule in indexed) {
+                rule.overrideIndex = index
+            }
+            return index
+        }
+    }
+}
+
+/**
+ * The indexed override rules one user passes, looked up on first use and shared by every
+ * copy of that user's evaluation context, so a multi-entity call does the lookup once.
+ */
+internal class OverrideMatches {
+    private var index: OverrideIndex? = null
+    private var rules: Set<APIRule> = emptySet()
+
+    fun passes(user: StatsigUser, rule: APIRule): Boolean {
+        val ruleIndex = rule.overrideIndex ?: return false
+        // Rules from another download point at another index
+        if (index !== ruleIndex) {
+            rules = ruleIndex.rulesFor(user)
+            index = ruleIndex
+        }
+        return rules.contains(rule)
+    }
+}
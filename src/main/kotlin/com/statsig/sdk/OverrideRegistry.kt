@@ -0,0 +1,132 @@
+package com.statsig.sdk
+
+/**
+ * The overrides set on one gate, config or layer: an optional value for everyone
+ * and values for specific user or custom IDs. Never modified once published.
+ */
+internal class EntityOverride<T>(
+    private val default: T?,
+    private val byID: Map<String, T>,
+) {
+    // userID wins over custom IDs, which win over the value for everyone
+    fun lookup(user: StatsigUser): T? {
+        if (byID.isEmpty()) {
+            return default
+        }
+        user.userID?.let { id -> byID[id]?.let { return it } }
+        user.customIDs?.let { customIDs ->
+            for (id in customIDs.values) {
+                byID[id]?.let { return it }
+            }
+        }
+        return default
+    }
+
+    fun with(forID: String?, value: T): EntityOverride<T> {
+        if (forID == null) {
+            return EntityOverride(value, byID)
+        }
+        return EntityOverride(default, HashMap(byID).apply { put(forID, value) })
+    }
+
+    fun without(forID: String?): EntityOverride<T> {
+        if (forID == null) {
+            return EntityOverride(null, byID)
+        }
+        if (!byID.containsKey(forID)) {
+            return this
+        }
+        return EntityOverride(default, HashMap(byID).apply { remove(forID) })
+    }
+}
+
+/**
+ * Local overrides for gates, configs and layers.
+ *
+ * Readers see an immutable snapshot through a volatile reference and never lock.
+ * Writers are serialized, copy the entries they change and publish a new snapshot,
+ * so a reader sees either all or none of a write.
+ */
+internal class OverrideRegistry {
+    private class Snapshot(
+        val gates: Map<String, EntityOverride<Boolean>>,
+        val configs: Map<String, EntityOverride<Map<String, Any>>>,
+        val layers: Map<String, EntityOverride<Map<String, Any>>>,
+    ) {
+        val isEmpty = gates.isEmpty() && configs.isEmpty() && layers.isEmpty()
+    }
+
+    @Volatile
+    private var snapshot = Snapshot(emptyMap(), emptyMap(), emptyMap())
+    private val lock = Any()
+
+    fun isEmpty(): Boolean {
+        return snapshot.isEmpty
+    }
+
+    fun getGate(name: String): EntityOverride<Boolean>? {
+        val current = snapshot
+        return if (current.isEmpty) null else current.gates[name]
+    }
+
+    fun getConfig(name: String): EntityOverride<Map<String, Any>>? {
+        val current = snapshot
+        return if (current.isEmpty) null else current.configs[name]
+    }
+
+    fun getLayer(name: String): EntityOverride<Map<String, Any>>? {
+        val current = snapshot
+        return if (current.isEmpty) null else current.layers[name]
+    }
+
+    fun setGate(name: String, value: Boolean, forID: String?) {
+        update { Snapshot(put(it.gates, name, forID, value), it.configs, it.layers) }
+    }
+
+    fun setConfig(name: String, value: Map<String, Any>, forID: String?) {
+        update { Snapshot(it.gates, put(it.configs, name, forID, value), it.layers) }
+    }
+
+    fun setLayer(name: String, value: Map<String, Any>, forID: String?) {
+        update { Snapshot(it.gates, it.configs, put(it.layers, name, forID, value)) }
+    }
+
+    fun removeGate(name: String, forID: String?) {
+        update { Snapshot(remove(it.gates, name, forID), it.configs, it.layers) }
+    }
+
+    fun removeConfig(name: String, forID: String?) {
+        update { Snapshot(it.gates, remove(it.configs, name, forID), it.layers) }
+    }
+
+    fun removeLayer(name: String, forID: String?) {
+        update { Snapshot(it.gates, it.configs, remove(it.layers, name, forID)) }
+    }
+
+    private inline fun update(change: (Snapshot) -> Snapshot) {
+        synchronized(lock) {
+            snapshot = change(snapshot)
+        }
+    }
+
+    private fun <T> put(
+        overrides: Map<String, EntityOverride<T>>,
+        name: String,
+        forID: String?,
+        value: T,
+    ): Map<String, EntityOverride<T>> {
+        val updated = (overrides[name] ?: EntityOverride<T>(null, emptyMap())).with(forID, value)
+        return HashMap(overrides).apply { put(name, updated) }
+    }
+
+    // An entity stays overridden once all of its values are removed, as it always has: it evaluates
+    // to the override default, false or an empty map, rather than evaluating normally again
+    private fun <T> remove(
+        overrides: Map<String, EntityOverride<T>>,
+        name: String,
+        forID: String?,
+    ): Map<String, EntityOverride<T>> {
+        val existing = overrides[name] ?: return overrides
+        return HashMap(overrides).apply { put(name, existing.without(forID)) }
+    }
+}
@@ -0,0 +1,199 @@
+package com.statsig.sdk
+
+/**
+ * The user attributes that evaluating some gates, configs and layers can read, including through
+ * the gates and experiments they reference. A user with only these set evaluates the same as one
+ * with every attribute set, apart from local overrides and persisted assignments.
+ *
+ * @property userFields fields read by user_field, ip_based and ua_based conditions, as the
+ * conditions name them. These are built-in properties like "email" or keys of custom and
+ * privateAttributes. ip_based and ua_based conditions also read "ip" and "userAgent".
+ * @property idTypes the unit IDs hashed or compared, "userID" for the user ID and otherwise
+ * keys of customIDs
+ * @property environmentFields keys of statsigEnvironment read by environment_field conditions
+ * @property cacheable true when these attributes alone decide the result, so users agreeing on
+ * them get the same result. False when a condition also reads the current time, an ID list
+ * (in_segment_list or not_in_segment_list) or the client SDK key's target app.
+ */
+class RequiredUserFields internal constructor(
+    val userFields: Set<String>,
+    val idTypes: Set<String>,
+    val environmentFields: Set<String>,
+    val cacheable: Boolean,
+) {
+    // Readers for userFields, built the first time a user is fingerprinted or cached
+    private val fieldReaders by lazy { userFields.map { UserField.of(it) }.toTypedArray() }
+
+    /**
+     * The values of these attributes on [user], in a fixed order.
+     */
+    internal fun valuesOf(user: StatsigUser): List<Any?> {
+        val values = ArrayList<Any?>(fieldReaders.size + idTypes.size + environmentFields.size)
+        for (reader in fieldReaders) {
+            values.add(reader.get(user))
+        }
+        for (idType in idTypes) {
+            values.add(user.getID(idType))
+        }
+        val environment = user.statsigEnvironment
+        for (field in environmentFields) {
+            values.add(environment?.get(field) ?: environment?.get(field.lowercase()))
+        }
+        return values
+    }
+
+    /**
+     * A fingerprint of the values of these attributes on [user].
+     */
+    internal fun fingerprintOf(user: StatsigUser): Long {
+        var hash = Fingerprint.SEED
+        for (reader in fieldReaders) {
+            hash = Fingerprint.add(hash, reader.get(user))
+        }
+        for (idType in idTypes) {
+            hash = Fingerprint.add(hash, user.getID(idType))
+        }
+        val environment = user.statsigEnvironment
+        for (field in environmentFields) {
+            hash = Fingerprint.add(hash, environment?.get(field) ?: environment?.get(field.lowercase()))
+        }
+        return Fingerprint.finish(hash)
+    }
+
+    internal fun union(other: RequiredUserFields): RequiredUserFields {
+        if (other.isWithin(this)) {
+            return this
+        }
+        if (isWithin(other)) {
+            return other
+        }
+        return RequiredUserFields(
+            userFields + other.userFields,
+            idTypes + other.idTypes,
+            environmentFields + other.environmentFields,
+            cacheable && other.cacheable,
+        )
+    }
+
+    private fun isWithin(other: RequiredUserFields): Boolean {
+        return other.userFields.containsAll(userFields) &&
+            other.idTypes.containsAll(idTypes) &&
+            other.environmentFields.containsAll(environmentFields) &&
+            (cacheable || !other.cacheable)
+    }
+
+    override fun toString(): String {
+        return "RequiredUserFields(userFields=$userFields, idTypes=$idTypes, environmentFields=$environmentFields, cacheable=$cacheable)"
+    }
+
+    companion object {
+        @JvmField
+        val EMPTY = RequiredUserFields(emptySet(), emptySet(), emptySet(), true)
+    }
+}
+
+/**
+ * The [RequiredUserFields] of every gate, config and layer in a download, each covering the
+ * specs it references through pass_gate, fail_gate and configDelegate. Built once per download,
+ * with specs that read the same attributes sharing one instance.
+ */
+internal class RequiredUserFieldsIndex private constructor(
+    private val required: Map<SpecNode, RequiredUserFields>,
+) {
+    fun get(node: SpecNode): RequiredUserFields {
+        return required[node] ?: RequiredUserFields.EMPTY
+    }
+
+    /**
+     * The attributes read by every gate, config and layer named one of [names].
+     */
+    fun forNames(names: Collection<String>): RequiredUserFields {
+        var result = RequiredUserFields.EMPTY
+        for (name in names) {
+            for (type in EntityType.values()) {
+                required[SpecNode(type, name)]?.let { result = result.union(it) }
+            }
+        }
+        return result
+    }
+
+    companion object {
+        val EMPTY = RequiredUserFieldsIndex(emptyMap())
+
+        fun build(
+            dependencies: SpecDependencyGraph,
+            gates: Map<String, APIConfig>,
+            dynamicConfigs: Map<String, APIConfig>,
+            layerConfigs: Map<String, APIConfig>,
+        ): RequiredUserFieldsIndex {
+            val required = HashMap<SpecNode, RequiredUserFields>()
+            // References come first in the evaluation order, so each is complete when reached
+            for (node in dependencies.evaluationOrder) {
+                val spec = when (node.type) {
+                    EntityType.GATE -> gates[node.name]
+                    EntityType.CONFIG -> dynamicConfigs[node.name]
+                    EntityType.LAYER -> layerConfigs[node.name]
+                } ?: continue
+                var fields = readBy(spec)
+                for (reference in dependencies.getDependencies(node)) {
+                    required[reference]?.let { fields = fields.union(it) }
+                }
+                required[node] = fields
+            }
+            // Except on a cycle, where the node closing it was reached before the rest
+            for (cycle in dependencies.cycles) {
+                var fields = RequiredUserFields.EMPTY
+                for (node in cycle) {
+                    required[node]?.let { fields = fields.union(it) }
+                }
+                for (node in dependencies.getImpactedNodes(cycle[0]) + cycle) {
+                    required[node] = required[node]?.union(fields) ?: fields
+                }
+            }
+            return RequiredUserFieldsIndex(required)
+        }
+
+        // What the spec's own rules read, without following references
+        private fun readBy(spec: APIConfig): RequiredUserFields {
+            val userFields = LinkedHashSet<String>()
+            val idTypes = LinkedHashSet<String>()
+            val environmentFields = LinkedHashSet<String>()
+            var cacheable = true
+            for (rule in spec.rules) {
+                if (rule.passPercentage > 0.0 && rule.passPercentage < 100.0) {
+                    idTypes.add(idTypeName(rule.idType))
+                }
+                rule.bucketAllocation?.let { idTypes.add(idTypeName(it.idType)) }
+                for (condition in rule.conditions) {
+                    val field = Utils.toStringOrEmpty(condition.field)
+                    if (condition.operator == Const.IN_SEGMENT_LIST || condition.operator == Const.NOT_IN_SEGMENT_LIST) {
+                        cacheable = false
+                    }
+                    when (Utils.toStringOrEmpty(condition.type).lowercase()) {
+                        Const.USER_FIELD -> userFields.add(field)
+                        Const.IP_BASED -> {
+                            userFields.add(field)
+                            userFields.add("ip")
+                        }
+                        Const.UA_BASED -> {
+                            userFields.add(field)
+                            userFields.add("userAgent")
+                        }
+                        Const.ENVIRONMENT_FIELD -> environmentFields.add(field)
+                        Const.UNIT_ID, Const.USER_BUCKET -> idTypes.add(idTypeName(condition.idType))
+                        Const.CURRENT_TIME, Const.TARGET_APP -> cacheable = false
+                    }
+                }
+            }
+            if (userFields.isEmpty() && idTypes.isEmpty() && environmentFields.isEmpty() && cacheable) {
+                return RequiredUserFields.EMPTY
+            }
+            return RequiredUserFields(userFields, idTypes, environmentFields, cacheable)
+        }
+
+        // The same ID StatsigUser.getID reads
+        private fun idTypeName(idType: String?): String {
+            return if (idType.isNullOrEmpty() || idType.equals("userid", true)) "userID" else idType
+        }
+    }
+}
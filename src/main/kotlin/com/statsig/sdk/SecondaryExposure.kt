@@ -0,0 +1,87 @@
+package com.statsig.sdk
+
+import java.util.AbstractMap.SimpleImmutableEntry
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * An immutable gate exposure. It reads and serializes like
+ * mapOf("gate" to ..., "gateValue" to ..., "ruleID" to ...), but its hash and
+ * dedupe key are computed once up front.
+ */
+internal class SecondaryExposure(
+    val gate: String,
+    val gateValue: String,
+    val ruleID: String,
+) : AbstractMap<String, String>() {
+    val dedupeKey: String = "$gate|$gateValue|$ruleID"
+
+    override val entries: Set<Map.Entry<String, String>> = linkedSetOf(
+        SimpleImmutableEntry(GATE, gate),
+        SimpleImmutableEntry(GATE_VALUE, gateValue),
+        SimpleImmutableEntry(RULE_ID, ruleID),
+    )
+
+    // Same value AbstractMap would compute from the entries
+    private val hash: Int = entries.sumOf { it.hashCode() }
+
+    override val size: Int
+        get() = 3
+
+    override fun get(key: String): String? {
+        return when (key) {
+            GATE -> gate
+            GATE_VALUE -> gateValue
+            RULE_ID -> ruleID
+            else -> null
+        }
+    }
+
+    override fun containsKey(key: String): Boolean {
+        return key == GATE || key == GATE_VALUE || key == RULE_ID
+    }
+
+    override fun hashCode(): Int {
+        return hash
+    }
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) {
+            return true
+        }
+        if (other is SecondaryExposure) {
+            return hash == other.hash && dedupeKey == other.dedupeKey
+        }
+        return super.equals(other)
+    }
+
+    companion object {
+        private const val GATE = "gate"
+        private const val GATE_VALUE = "gateValue"
+        private const val RULE_ID = "ruleID"
+
+        // Key used to dedupe exposures that may not have been created through this class
+        fun dedupeKeyOf(exposure: Map<String, String>): String {
+            if (exposure is SecondaryExposure) {
+                return exposure.dedupeKey
+            }
+            return "${exposure[GATE]}|${exposure[GATE_VALUE]}|${exposure[RULE_ID]}"
+        }
+    }
+}
+
+/**
+ * Hands out one shared SecondaryExposure per gate, value and rule. Lives on a
+ * SpecSnapshot so the pool is dropped along with the specs it was built from.
+ */
+internal class SecondaryExposurePool {
+    private val passed = ConcurrentHashMap<String, ConcurrentHashMap<String, SecondaryExposure>>()
+    private val failed = ConcurrentHashMap<String, ConcurrentHashMap<String, SecondaryExposure>>()
+
+    fun get(gate: String, gateValue: Boolean, ruleID: String): SecondaryExposure {
+        val byGate = if (gateValue) passed else failed
+        val byRule = byGate[gate] ?: byGate.getOrPut(gate) { ConcurrentHashMap() }
+        return byRule[ruleID] ?: byRule.getOrPut(ruleID) {
+            SecondaryExposure(gate, gateValue.toString(), ruleID)
+        }
+    }
+}
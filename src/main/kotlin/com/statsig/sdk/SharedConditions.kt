@@ -0,0 +1,115 @@
+package com.statsig.sdk
+
+/**
+ * Conditions that appear more than once across a download's specs, such as the same
+ * country list or email domain on many gates. Each distinct condition gets a slot, so a
+ * [ConditionMemo] can evaluate it once per user for a whole multi-entity call.
+ *
+ * Only conditions whose result depends on nothing but the user and the process are shared.
+ * pass_gate/fail_gate are memoized separately with their exposures, and current_time and
+ * target_app depend on when and for which client key they run.
+ */
+internal class SharedConditions private constructor(val size: Int) {
+    companion object {
+        val EMPTY = SharedConditions(0)
+
+        private val SHAREABLE_TYPES = setOf(
+            Const.USER_FIELD,
+            Const.UNIT_ID,
+            Const.ENVIRONMENT_FIELD,
+            Const.IP_BASED,
+            Const.UA_BASED,
+            Const.USER_BUCKET,
+        )
+
+        /**
+         * Finds structurally identical conditions in [specs] and points each copy at the slot they share.
+         */
+        fun build(vararg specs: Map<String, APIConfig>): SharedConditions {
+            val copies = LinkedHashMap<ConditionKey, MutableList<APICondition>>()
+            for (configs in specs) {
+                for (config in configs.values) {
+                    for (rule in config.rules) {
+                        for (condition in rule.conditions) {
+                            if (Utils.toStringOrEmpty(condition.type).lowercase() !in SHAREABLE_TYPES) {
+                                continue
+                            }
+                            copies.getOrPut(ConditionKey(condition)) { ArrayList(1) }.add(condition)
+                        }
+                    }
+                }
+            }
+
+            val repeated = copies.values.filter { it.size > 1 }
+            if (repeated.isEmpty()) {
+                return EMPTY
+            }
+            val table = SharedConditions(repeated.size)
+            for ((slot, conditions) in repeated.withIndex()) {
+                val shared = SharedCondition(table, slot)
+                for (condition in conditions) {
+                    condition.shared = shared
+                }
+            }
+            return table
+        }
+    }
+
+    // Nullable throughout, since Gson leaves missing fields null
+    private data class ConditionKey(
+        val type: String?,
+        val field: String?,
+        val operator: String?,
+        val targetValue: Any?,
+        val idType: String?,
+        val additionalValues: Map<String, Any>?,
+    ) {
+        constructor(condition: APICondition) : this(
+            condition.type,
+            condition.field,
+            condition.operator,
+            condition.targetValue,
+            condition.idType,
+            condition.additionalValues,
+        )
+    }
+}
+
+/**
+ * The slot of a repeated condition in its download's [SharedConditions].
+ */
+internal class SharedCondition(val table: SharedConditions, val slot: Int)
+
+/**
+ * Results of shared conditions for one user, kept for the length of one call and shared
+ * by every copy of its evaluation context.
+ */
+internal class ConditionMemo {
+    private var table: SharedConditions? = null
+    private var results = ByteArray(0)
+
+    fun get(condition: SharedCondition): Boolean? {
+        if (condition.table !== table) {
+            return null
+        }
+        return when (results[condition.slot]) {
+            PASSED -> true
+            FAILED -> false
+            else -> null
+        }
+    }
+
+    fun put(condition: SharedCondition, result: Boolean) {
+        // Specs from another download number their conditions differently
+        if (condition.table !== table) {
+            table = condition.table
+            results = ByteArray(condition.table.size)
+        }
+        results[condition.slot] = if (result) PASSED else FAILED
+    }
+
+    private companion object {
+        const val PASSED: Byte = 1
+        const val FAILED: Byte = 2
+    }
+}
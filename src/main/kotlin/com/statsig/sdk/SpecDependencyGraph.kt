@@ -0,0 +1,152 @@
+package com.statsig.sdk
+
+/**
+ * A gate, dynamic config or layer in the downloaded specs.
+ * Segments and holdouts are gates.
+ */
+data class SpecNode(val type: EntityType, val name: String) {
+    override fun toString(): String {
+        return "${type.name.lowercase()}:$name"
+    }
+}
+
+/**
+ * The references between specs: gates named by pass_gate and fail_gate conditions,
+ * and experiments named as a rule's configDelegate. Built once per config download.
+ *
+ * Useful for tooling that needs to know what is affected by changing a gate, e.g.
+ * getDependents(SpecNode(EntityType.GATE, "segment:beta_users")).
+ */
+class SpecDependencyGraph internal constructor(
+    private val dependencies: Map<SpecNode, List<SpecNode>>,
+) {
+    private val dependents: Map<SpecNode, List<SpecNode>>
+
+    /**
+     * Every node, with the nodes it depends on placed before it.
+     * For a cycle, the order is the one in which the cycle was first entered.
+     */
+    val evaluationOrder: List<SpecNode>
+
+    /**
+     * Reference cycles, each listed as the nodes along the cycle.
+     * Evaluating an entity on a cycle does not terminate.
+     */
+    val cycles: List<List<SpecNode>>
+
+    init {
+        val reverse = LinkedHashMap<SpecNode, MutableList<SpecNode>>()
+        for ((node, targets) in dependencies) {
+            for (target in targets) {
+                reverse.getOrPut(target) { ArrayList() }.add(node)
+            }
+        }
+        dependents = reverse
+
+        val order = ArrayList<SpecNode>(dependencies.size)
+        val foundCycles = ArrayList<List<SpecNode>>()
+        val visited = HashSet<SpecNode>()
+        val path = ArrayList<SpecNode>()
+        val onPath = HashSet<SpecNode>()
+
+        fun visit(node: SpecNode) {
+            if (node in onPath) {
+                foundCycles.add(path.subList(path.indexOf(node), path.size).toList())
+                return
+            }
+            if (!visited.add(node)) {
+                return
+            }
+            path.add(node)
+            onPath.add(node)
+            for (target in dependencies[node] ?: emptyList()) {
+                visit(target)
+            }
+            path.removeAt(path.size - 1)
+            onPath.remove(node)
+            order.add(node)
+        }
+
+        for (node in dependencies.keys) {
+            visit(node)
+        }
+        evaluationOrder = order
+        cycles = foundCycles
+    }
+
+    /**
+     * The gates and experiments the given node references directly.
+     */
+    fun getDependencies(node: SpecNode): List<SpecNode> {
+        return dependencies[node] ?: emptyList()
+    }
+
+    /**
+     * The nodes that reference the given node directly.
+     */
+    fun getDependents(node: SpecNode): List<SpecNode> {
+        return dependents[node] ?: emptyList()
+    }
+
+    /**
+     * Every node whose evaluation can change when the given node changes.
+     */
+    fun getImpactedNodes(node: SpecNode): Set<SpecNode> {
+        val impacted = LinkedHashSet<SpecNode>()
+        val pending = ArrayDeque(getDependents(node))
+        while (pending.isNotEmpty()) {
+            val next = pending.removeFirst()
+            if (impacted.add(next)) {
+                pending.addAll(getDependents(next))
+            }
+        }
+        return impacted
+    }
+
+    companion object {
+        @JvmField
+        val EMPTY = SpecDependencyGraph(emptyMap())
+
+        internal fun build(
+            gates: Map<String, APIConfig>,
+            dynamicConfigs: Map<String, APIConfig>,
+            layerConfigs: Map<String, APIConfig>,
+        ): SpecDependencyGraph {
+            val dependencies = LinkedHashMap<SpecNode, List<SpecNode>>()
+            fun addAll(type: EntityType, specs: Map<String, APIConfig>) {
+                for ((name, spec) in specs) {
+                    dependencies[SpecNode(type, name)] = referencesOf(spec, gates, dynamicConfigs)
+                }
+            }
+            addAll(EntityType.GATE, gates)
+            addAll(EntityType.CONFIG, dynamicConfigs)
+            addAll(EntityType.LAYER, layerConfigs)
+            return SpecDependencyGraph(dependencies)
+        }
+
+        private fun referencesOf(
+            spec: APIConfig,
+            gates: Map<String, APIConfig>,
+            dynamicConfigs: Map<String, APIConfig>,
+        ): List<SpecNode> {
+            val references = LinkedHashSet<SpecNode>()
+            for (rule in spec.rules) {
+                for (condition in rule.conditions) {
+                    val type = condition.type
+                    if (!type.equals("pass_gate", true) && !type.equals("fail_gate", true)) {
+                        continue
+                    }
+                    val gateName = Utils.toStringOrEmpty(condition.targetValue)
+                    if (gates.containsKey(gateName)) {
+                        references.add(SpecNode(EntityType.GATE, gateName))
+                    }
+                }
+                val delegate = rule.configDelegate
+                if (delegate != null && dynamicConfigs.containsKey(delegate)) {
+                    references.add(SpecNode(EntityType.CONFIG, delegate))
+                }
+            }
+            return if (references.isEmpty()) emptyList() else references.toList()
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.statsig.sdk
+
+/**
+ * An immutable view of the specs from a single config download.
+ * SpecStore swaps the whole snapshot when new specs arrive, so an evaluation that
+ * holds on to one never sees a half-applied update.
+ */
+internal class SpecSnapshot(
+    val gates: Map<String, APIConfig>,
+    val dynamicConfigs: Map<String, APIConfig>,
+    val layerConfigs: Map<String, APIConfig>,
+    val experimentToLayer: Map<String, String>,
+    val time: Long,
+    environment: Map<String, String>?,
+) {
+    val secondaryExposures = SecondaryExposurePool()
+    val dependencies = SpecDependencyGraph.build(gates, dynamicConfigs, layerConfigs)
+    val requiredUserFields = RequiredUserFieldsIndex.build(dependencies, gates, dynamicConfigs, layerConfigs)
+    val overrides = OverrideIndex.build(gates, dynamicConfigs, layerConfigs)
+    val sharedConditions = SharedConditions.build(gates, dynamicConfigs, layerConfigs)
+    val userAttributes = UserAttributes.build(gates, dynamicConfigs, layerConfigs)
+    val environment = EnvironmentSpecialization.build(environment, gates, dynamicConfigs, layerConfigs)
+
+    init {
+        ConstantOutcome.build(this.environment, gates, dynamicConfigs, layerConfigs)
+    }
+
+    fun getGate(name: String): APIConfig? {
+        return gates[name]
+    }
+
+    fun getConfig(name: String): APIConfig? {
+        return dynamicConfigs[name]
+    }
+
+    fun getLayerConfig(name: String): APIConfig? {
+        return layerConfigs[name]
+    }
+
+    fun getLayerNameForExperiment(experimentName: String): String? {
+        return experimentToLayer[experimentName]
+    }
+
+    companion object {
+        val EMPTY = SpecSnapshot(emptyMap(), emptyMap(), emptyMap(), emptyMap(), 0, null)
+    }
+}
@@ -24,17 +24,16 @@ internal class SpecStore(
     private var evalReason: EvaluationReason = EvaluationReason.UNINITIALIZED
     private var downloadIDListCallCount: Long = 0
 
-    private var dynamicConfigs: Map<String, APIConfig> = emptyMap()
-    private var gates: Map<String, APIConfig> = emptyMap()
+    @Volatile
+    private var snapshot: SpecSnapshot = SpecSnapshot.EMPTY
     private var layers: Map<String, Array<String>> = HashMap()
     private var idLists: MutableMap<String, IDList> = HashMap()
     private var sdkKeysToAppIDs: Map<String, String> = HashMap()
     private var hashedSDKKeysToAppIDs: Map<String, String> = HashMap()
     private var hashedSDKKeysToEntities: Map<String, APIEntityNames> = HashMap()
     private var primaryTargetAppID: String? = null
+    private val reportedCycles: MutableSet<Set<SpecNode>> = HashSet()
 
-    private var layerConfigs: Map<String, APIConfig> = emptyMap()
-    private var experimentToLayer: Map<String, String> = emptyMap()
     private val logger = options.customLogger
 
     private var specUpdater = SpecUpdater(transport, options, statsigMetadata, statsigScope, errorBoundary, diagnostics, sdkConfigs, serverSecret)
@@ -107,10 +106,15 @@ internal class SpecStore(
             }
         }
 
-        this.gates = newGates
-        this.dynamicConfigs = newDynamicConfigs
-        this.layerConfigs = newLayerConfigs
-        this.experimentToLayer = newExperimentToLayer
+        this.snapshot = SpecSnapshot(
+            newGates,
+            newDynamicConfigs,
+            newLayerConfigs,
+            newExperimentToLayer,
+            downloadedConfig.time,
+            options.getEnvironment(),
+        )
+        reportDependencyCycles(this.snapshot.dependencies)
         specUpdater.lastUpdateTime = downloadedConfig.time
         this.sdkKeysToAppIDs = downloadedConfig.sdkKeysToAppIDs ?: mapOf()
         this.hashedSDKKeysToAppIDs = downloadedConfig.hashedSDKKeysToAppIDs ?: mapOf()
@@ -133,28 +137,40 @@ internal class SpecStore(
         return true
     }
 
+    fun getSnapshot(): SpecSnapshot {
+        return this.snapshot
+    }
+
+    fun getDependencyGraph(): SpecDependencyGraph {
+        return this.snapshot.dependencies
+    }
+
+    fun getRequiredUserFields(entityNames: Collection<String>): RequiredUserFields {
+        return this.snapshot.requiredUserFields.forNames(entityNames)
+    }
+
     fun getGate(name: String): APIConfig? {
-        return this.gates[name]
+        return this.snapshot.getGate(name)
     }
 
     fun getAllGates(): Map<String, APIConfig> {
-        return this.gates
+        return this.snapshot.gates
     }
 
     fun getConfig(name: String): APIConfig? {
-        return this.dynamicConfigs[name]
+        return this.snapshot.getConfig(name)
     }
 
     fun getAllConfigs(): Map<String, APIConfig> {
-        return this.dynamicConfigs
+        return this.snapshot.dynamicConfigs
     }
 
     fun getLayerConfig(name: String): APIConfig? {
-        return this.layerConfigs[name]
+        return this.snapshot.getLayerConfig(name)
     }
 
     fun getAllLayerConfigs(): Map<String, APIConfig> {
-        return this.layerConfigs
+        return this.snapshot.layerConfigs
     }
 
     fun getLayer(name: String): Array<String>? {
@@ -166,7 +182,7 @@ internal class SpecStore(
     }
 
     fun getLayerNameForExperiment(experimentname: String): String? {
-        return this.experimentToLayer[experimentname]
+        return this.snapshot.getLayerNameForExperiment(experimentname)
     }
 
     fun getIDList(idListName: String): IDList? {
@@ -431,6 +447,16 @@ internal class SpecStore(
         return response
     }
 
+    // Each cycle is logged the first time it shows up rather than on every sync
+    private fun reportDependencyCycles(graph: SpecDependencyGraph) {
+        for (cycle in graph.cycles) {
+            if (reportedCycles.add(cycle.toSet())) {
+                val description = (cycle + cycle.first()).joinToString(" -> ")
+                logger.warn("[StatsigSpecStore] Found a reference cycle between specs: $description")
+            }
+        }
+    }
+
     private fun getParsedSpecs(values: Array<APIConfig>): Map<String, APIConfig> {
         val parsed: MutableMap<String, APIConfig> = emptyMap<String, APIConfig>().toMutableMap()
         var specName: String?
@@ -438,6 +464,13 @@ internal class SpecStore(
             specName = value.name
             parsed[specName] = value
             preProcessSegmentWithIDLists(value)
+            preProcessVersionTargets(value)
+            preProcessDateTargets(value)
+            preProcessTimeThresholds(value)
+            preProcessUserFields(value)
+            preProcessTargetLists(value)
+            preProcessBucketHashers(value)
+            preProcessBucketAllocations(value)
         }
         return parsed
     }
@@ -462,4 +495,91 @@ internal class SpecStore(
             }
         }
     }
+
+    private fun preProcessVersionTargets(configSpec: APIConfig) {
+        for (rule in configSpec.rules) {
+            for (condition in rule.conditions) {
+                if (condition.operator?.startsWith("version_") == true) {
+                    condition.versionTarget = Version.parse(condition.targetValue)
+                }
+            }
+        }
+    }
+
+    // Targets that fail to parse are left for the evaluator, which reports them
+    private fun preProcessDateTargets(configSpec: APIConfig) {
+        for (rule in configSpec.rules) {
+            for (condition in rule.conditions) {
+                val operator = condition.operator
+                if (operator != Const.BEFORE && operator != Const.AFTER && operator != Const.ON) {
+                    continue
+                }
+                val timestamp = try {
+                    Timestamps.parse(condition.targetValue)
+                } catch (e: Exception) {
+                    continue
+                }
+                if (timestamp != Timestamps.INVALID) {
+                    condition.targetTimestamp = timestamp
+                    condition.targetEpochDay = Timestamps.epochDay(timestamp)
+                }
+            }
+        }
+    }
+
+    // Needs the timestamps parsed by preProcessDateTargets
+    private fun preProcessTimeThresholds(configSpec: APIConfig) {
+        for (rule in configSpec.rules) {
+            for (condition in rule.conditions) {
+                if (Utils.toStringOrEmpty(condition.type).lowercase() == Const.CURRENT_TIME) {
+                    condition.timeThreshold = TimeThreshold.compile(condition)
+                }
+            }
+        }
+    }
+
+    private fun preProcessUserFields(configSpec: APIConfig) {
+        for (rule in configSpec.rules) {
+            for (condition in rule.conditions) {
+                when (Utils.toStringOrEmpty(condition.type).lowercase()) {
+                    Const.USER_FIELD, Const.IP_BASED, Const.UA_BASED ->
+                        condition.userField = UserField.of(Utils.toStringOrEmpty(condition.field))
+                }
+            }
+        }
+    }
+
+    // id_list segments already have their own lowercased set
+    private fun preProcessTargetLists(configSpec: APIConfig) {
+        for (rule in configSpec.rules) {
+            for (condition in rule.conditions) {
+                if (condition.segmentIdSet != null) {
+                    continue
+                }
+                condition.targetSet = TargetSet.compile(condition.operator, condition.targetValue)
+                condition.stringMatcher = StringMatcher.compile(condition.operator, condition.targetValue)
+            }
+        }
+    }
+
+    private fun preProcessBucketHashers(configSpec: APIConfig) {
+        for (rule in configSpec.rules) {
+            rule.bucketHasher = BucketHasher.forRule(configSpec, rule)
+            for (condition in rule.conditions) {
+                if (Utils.toStringOrEmpty(condition.type).lowercase() == Const.USER_BUCKET) {
+                    condition.bucketHasher = BucketHasher.forUserBucket(condition)
+                }
+            }
+        }
+    }
+
+    // Set on the first rule of each run of bucket-only rules
+    private fun preProcessBucketAllocations(configSpec: APIConfig) {
+        var index = 0
+        while (index < configSpec.rules.size) {
+            val allocation = BucketAllocation.build(configSpec.rules, index)
+            configSpec.rules[index].bucketAllocation = allocation
+            index += allocation?.ruleCount ?: 1
+        }
+    }
 }
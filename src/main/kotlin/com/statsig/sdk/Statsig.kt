@@ -1,8 +1,11 @@
 package com.statsig.sdk
 
 import com.statsig.sdk.persistent_storage.PersistedValues
+import com.statsig.sdk.persistent_storage.PersistentStorageWriteMetrics
 import kotlinx.coroutines.runBlocking
 import java.util.concurrent.CompletableFuture
+import java.util.function.Consumer
+import java.util.stream.Stream
 
 class Statsig {
     companion object {
@@ -451,6 +454,52 @@ class Statsig {
             return statsigServer.getEvaluationsForUser(user, hash, clientSDKKey)
         }
 
+        /**
+         * Evaluates a set of gates, configs and layers for many users in parallel.
+         * All users are evaluated against the same config specs, even if new specs arrive mid-run.
+         * Results are handed to the consumer from executor threads as they are produced, so the
+         * consumer must be thread safe. An exception thrown by the consumer stops the run and is
+         * rethrown once the batches already submitted have finished.
+         *
+         * @param users The users to evaluate, read lazily as batches are submitted
+         * @param entityNames Names of the gates, configs, experiments and layers to evaluate
+         * @param consumer Receives one result per user and recognized entity
+         * @param options Executor, batching and exposure logging settings
+         *
+         * @return true if every user was evaluated
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun evaluateInBulk(
+            users: Iterator<StatsigUser>,
+            entityNames: Set<String>,
+            consumer: Consumer<BulkEvaluationResult>,
+            options: BulkEvaluationOptions? = null,
+        ): Boolean {
+            if (!checkInitialized()) {
+                return false
+            }
+            return statsigServer.evaluateInBulk(users, entityNames, consumer, options)
+        }
+
+        /**
+         * Evaluates a set of gates, configs and layers for a stream of users in parallel.
+         * See [evaluateInBulk] for details.
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun evaluateInBulk(
+            users: Stream<StatsigUser>,
+            entityNames: Set<String>,
+            consumer: Consumer<BulkEvaluationResult>,
+            options: BulkEvaluationOptions? = null,
+        ): Boolean {
+            if (!checkInitialized()) {
+                return false
+            }
+            return statsigServer.evaluateInBulk(users, entityNames, consumer, options)
+        }
+
         /**
          * Logs an event to Statsig with the provided values.
          *
@@ -804,6 +853,47 @@ class Statsig {
             return statsigServer._getExperimentGroups(experimentName)
         }
 
+        /**
+         * Returns the references between gates, configs and layers in the current specs
+         *
+         * @return A graph for finding the entities a gate or experiment affects
+         */
+        @JvmStatic
+        fun getSpecDependencyGraph(): SpecDependencyGraph {
+            if (!checkInitialized()) {
+                return SpecDependencyGraph.EMPTY
+            }
+            return statsigServer.getSpecDependencyGraph()
+        }
+
+        /**
+         * Returns the user attributes the given gates, configs and layers can read in the current specs
+         *
+         * @param entityNames The names of the gates, configs and layers to be evaluated
+         * @return The user fields, ID types and environment fields their evaluation depends on,
+         * and whether those alone decide it
+         */
+        @JvmStatic
+        fun getRequiredUserFields(entityNames: List<String>): RequiredUserFields {
+            if (!checkInitialized()) {
+                return RequiredUserFields.EMPTY
+            }
+            return statsigServer.getRequiredUserFields(entityNames)
+        }
+
+        /**
+         * Returns counts of the writes to the user persistent storage, which are made in the background
+         *
+         * @return The saves and deletes queued, coalesced, suppressed, written and still pending
+         */
+        @JvmStatic
+        fun getPersistentStorageWriteMetrics(): PersistentStorageWriteMetrics {
+            if (!checkInitialized()) {
+                return PersistentStorageWriteMetrics.EMPTY
+            }
+            return statsigServer.getPersistentStorageWriteMetrics()
+        }
+
         /**
          * Stops all Statsig activity and flushes any pending events.
          */
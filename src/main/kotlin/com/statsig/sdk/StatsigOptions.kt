@@ -9,6 +9,7 @@ import java.io.InputStream
 import java.time.Instant
 import java.time.format.DateTimeFormatter
 import java.time.temporal.ChronoUnit
+import java.util.concurrent.Executor
 import kotlin.reflect.full.declaredMemberProperties
 import kotlin.reflect.jvm.isAccessible
 
@@ -94,6 +95,9 @@ fun interface RulesUpdatedCallback {
  * @property apiForDownloadConfigSpecs the api endpoint to use for initialization and logging
  * @property api the api endpoint to use for initialization and logging
  * @property proxyConfig the proxy config details for creating proxy agent
+ * @property evaluationCacheSize the number of gate, config and layer results to keep for users with
+ * the same values of the attributes each one reads. 0, the default, turns the cache off. Users with
+ * attribute suppliers registered are never cached, so their suppliers still only run when read
  * NOTE: gates/configs will still be fetched in the background if this time is exceeded, but the
  * callback to initialize will fire after, at most, the time specified
  */
@@ -119,6 +123,7 @@ class StatsigOptions(
     var disableIPResolution: Boolean = false,
     var userPersistentStorage: IUserPersistentStorage? = null,
     var logLevel: LogLevel? = null,
+    var evaluationCacheSize: Int = 0,
 ) {
     constructor(api: String) : this(api, DEFAULT_INIT_TIME_OUT_MS)
     constructor(initTimeoutMs: Long) : this(STATSIG_API_URL_BASE, initTimeoutMs)
@@ -269,3 +274,21 @@ data class GetExperimentOptions(
 ) {
     constructor() : this(false)
 }
+
+/**
+ * Options for StatsigServer.evaluateInBulk
+ *
+ * @property executor Where batches of users are evaluated. Defaults to the common ForkJoinPool
+ * @property batchSize Number of users handed to the executor in a single task
+ * @property maxPendingBatches Upper bound on batches submitted but not yet finished, which keeps
+ * memory flat when reading users from a large iterator. Defaults to twice the number of processors
+ * @property disableExposureLogging Skip gate and config exposures for the evaluated users
+ */
+data class BulkEvaluationOptions(
+    var executor: Executor? = null,
+    var batchSize: Int = 64,
+    var maxPendingBatches: Int = Runtime.getRuntime().availableProcessors() * 2,
+    var disableExposureLogging: Boolean = false,
+) {
+    constructor() : this(null)
+}
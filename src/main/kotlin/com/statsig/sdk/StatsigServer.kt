@@ -2,6 +2,7 @@ package com.statsig.sdk
 
 import com.statsig.sdk.network.StatsigTransport
 import com.statsig.sdk.persistent_storage.PersistedValues
+import com.statsig.sdk.persistent_storage.PersistentStorageWriteMetrics
 import kotlinx.coroutines.*
 import kotlinx.coroutines.future.future
 import kotlinx.coroutines.sync.Mutex
@@ -9,6 +10,8 @@ import kotlinx.coroutines.sync.withLock
 import java.util.Collections.emptyMap
 import java.util.concurrent.CompletableFuture
 import java.util.concurrent.atomic.AtomicBoolean
+import java.util.function.Consumer
+import java.util.stream.Stream
 
 sealed class StatsigServer {
     internal abstract var errorBoundary: ErrorBoundary
@@ -123,6 +126,38 @@ sealed class StatsigServer {
         clientSDKKey: String? = null,
     ): Map<String, Any>
 
+    fun evaluateInBulk(
+        users: Iterator<StatsigUser>,
+        entityNames: Set<String>,
+        consumer: Consumer<BulkEvaluationResult>,
+    ): Boolean {
+        return evaluateInBulk(users, entityNames, consumer, null)
+    }
+
+    abstract fun evaluateInBulk(
+        users: Iterator<StatsigUser>,
+        entityNames: Set<String>,
+        consumer: Consumer<BulkEvaluationResult>,
+        options: BulkEvaluationOptions?,
+    ): Boolean
+
+    fun evaluateInBulk(
+        users: Stream<StatsigUser>,
+        entityNames: Set<String>,
+        consumer: Consumer<BulkEvaluationResult>,
+    ): Boolean {
+        return evaluateInBulk(users.iterator(), entityNames, consumer, null)
+    }
+
+    fun evaluateInBulk(
+        users: Stream<StatsigUser>,
+        entityNames: Set<String>,
+        consumer: Consumer<BulkEvaluationResult>,
+        options: BulkEvaluationOptions?,
+    ): Boolean {
+        return evaluateInBulk(users.iterator(), entityNames, consumer, options)
+    }
+
     fun logEvent(user: StatsigUser?, eventName: String) {
         logEvent(user, eventName, null)
     }
@@ -267,6 +302,25 @@ sealed class StatsigServer {
      */
     abstract fun _getExperimentGroups(experimentName: String): Map<String, Map<String, Any>>
 
+    /**
+     * Returns the references between gates, configs and layers in the current specs,
+     * e.g. to find every entity affected by a change to a gate or segment.
+     */
+    abstract fun getSpecDependencyGraph(): SpecDependencyGraph
+
+    /**
+     * Returns the user attributes that evaluating the named gates, configs and layers can read in
+     * the current specs, including through nested gates and experiments, e.g. to skip looking up
+     * the rest when building a user.
+     */
+    abstract fun getRequiredUserFields(entityNames: List<String>): RequiredUserFields
+
+    /**
+     * Returns counts of the saves and deletes queued for the user persistent storage, and of
+     * those written so far.
+     */
+    abstract fun getPersistentStorageWriteMetrics(): PersistentStorageWriteMetrics
+
     abstract fun shutdown()
 
     @JvmSynthetic
@@ -871,6 +925,105 @@ private class StatsigServerImpl() :
         })
     }
 
+    override fun evaluateInBulk(
+        users: Iterator<StatsigUser>,
+        entityNames: Set<String>,
+        consumer: Consumer<BulkEvaluationResult>,
+        options: BulkEvaluationOptions?,
+    ): Boolean {
+        if (!isSDKInitialized()) {
+            return false
+        }
+        var consumerFailure: Throwable? = null
+        val completed = this.errorBoundary.captureSync("evaluateInBulk", {
+            val bulkOptions = options ?: BulkEvaluationOptions()
+            // Every user in the run is evaluated against the same specs, even if a sync lands mid-run
+            val specs = evaluator.specStore.getSnapshot()
+            val entities = entityNames.mapNotNull { name ->
+                when {
+                    specs.getGate(name) != null -> name to EntityType.GATE
+                    specs.getConfig(name) != null -> name to EntityType.CONFIG
+                    specs.getLayerConfig(name) != null -> name to EntityType.LAYER
+                    else -> {
+                        outputLogger.debug("[StatsigServer] evaluateInBulk skipping unrecognized entity: $name")
+                        null
+                    }
+                }
+            }
+
+            try {
+                runBulkEvaluation(users, specs, entities, consumer, bulkOptions)
+            } catch (e: BulkConsumerException) {
+                consumerFailure = e.cause
+            }
+            return@captureSync true
+        }, {
+            return@captureSync false
+        })
+        consumerFailure?.let { throw it }
+        return completed
+    }
+
+    private fun runBulkEvaluation(
+        users: Iterator<StatsigUser>,
+        specs: SpecSnapshot,
+        entities: List<Pair<String, EntityType>>,
+        consumer: Consumer<BulkEvaluationResult>,
+        bulkOptions: BulkEvaluationOptions,
+    ) {
+        BulkEvaluationRunner(bulkOptions).run(users) { user ->
+            val normalizedUser = normalizeUser(user)
+            val nestedGateResults = HashMap<String, ConfigEvaluation>()
+            val bucketHashes = HashMap<BucketHashKey, ULong>()
+            val overrideMatches = OverrideMatches()
+            val conditionMemo = ConditionMemo()
+            val preparedUser = PreparedUser(normalizedUser)
+            for ((name, type) in entities) {
+                val context = EvaluationContext(
+                    normalizedUser,
+                    specs = specs,
+                    nestedGateResults = nestedGateResults,
+                    bucketHashes = bucketHashes,
+                    overrideMatches = overrideMatches,
+                    conditionMemo = conditionMemo,
+                    preparedUser = preparedUser,
+                )
+                when (type) {
+                    EntityType.GATE -> evaluator.checkGate(context, name)
+                    EntityType.CONFIG -> evaluator.getConfig(context, name)
+                    EntityType.LAYER -> evaluator.getLayer(context, name)
+                }
+                val evaluation = context.evaluation
+                if (!bulkOptions.disableExposureLogging) {
+                    // Layer exposures are per parameter, so there is nothing to log until a value is read
+                    when (type) {
+                        EntityType.GATE -> logGateExposureImpl(normalizedUser, name, evaluation)
+                        EntityType.CONFIG -> logConfigImpl(normalizedUser, name, evaluation)
+                        EntityType.LAYER -> {}
+                    }
+                }
+                val result = BulkEvaluationResult(
+                    normalizedUser,
+                    name,
+                    type,
+                    evaluation.booleanValue,
+                    evaluation.ruleID,
+                    evaluation.groupName,
+                    if (type == EntityType.GATE) {
+                        emptyMap()
+                    } else {
+                        (evaluation.jsonValue as? Map<String, Any>) ?: emptyMap()
+                    },
+                )
+                try {
+                    consumer.accept(result)
+                } catch (e: Exception) {
+                    throw BulkConsumerException(e)
+                }
+            }
+        }
+    }
+
     override fun overrideLayer(layerName: String, value: Map<String, Any>) {
         if (!isSDKInitialized()) {
             return
@@ -1254,6 +1407,27 @@ private class StatsigServerImpl() :
         return evaluator.getVariants(experimentName)
     }
 
+    override fun getSpecDependencyGraph(): SpecDependencyGraph {
+        if (!isSDKInitialized()) {
+            return SpecDependencyGraph.EMPTY
+        }
+        return evaluator.specStore.getDependencyGraph()
+    }
+
+    override fun getRequiredUserFields(entityNames: List<String>): RequiredUserFields {
+        if (!isSDKInitialized()) {
+            return RequiredUserFields.EMPTY
+        }
+        return evaluator.specStore.getRequiredUserFields(entityNames)
+    }
+
+    override fun getPersistentStorageWriteMetrics(): PersistentStorageWriteMetrics {
+        if (!isSDKInitialized()) {
+            return PersistentStorageWriteMetrics.EMPTY
+        }
+        return evaluator.getPersistentStorageWriteMetrics()
+    }
+
     override fun shutdown() {
         if (!isSDKInitialized()) {
             return
@@ -1266,6 +1440,7 @@ private class StatsigServerImpl() :
             return
         }
         logger.flush()
+        evaluator.flushPersistentWrites()
     }
 
     override fun getCustomLogger(): LoggerInterface {
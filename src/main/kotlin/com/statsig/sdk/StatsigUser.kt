@@ -3,6 +3,7 @@ package com.statsig.sdk
 import com.google.gson.annotations.SerializedName
 import java.lang.StringBuilder
 import java.util.TreeMap
+import java.util.function.Supplier
 
 /**
  * An object of properties relating to the current user
@@ -21,6 +22,10 @@ import java.util.TreeMap
  * @property appVersion the current version of the app
  * @property custom any additional custom user attributes for custom conditions in the console
  * @property privateAttributes any user attributes that should be used in evaluation only and removed in any logs.
+ *
+ * Custom and private attributes that are expensive to compute can be registered with
+ * [setCustomSupplier] and [setPrivateAttributeSupplier] instead, so they are only computed
+ * when a condition reads them.
  */
 data class StatsigUser private constructor(
     @SerializedName("userID")
@@ -62,6 +67,41 @@ data class StatsigUser private constructor(
 
     constructor(userID: String, customIDs: Map<String, String>) : this(userID = userID, customIDs = customIDs, null)
 
+    // Null until a supplier is registered, including on users created by Gson
+    @Transient
+    internal var lazyCustom: LazyAttributes? = null
+
+    @Transient
+    internal var lazyPrivateAttributes: LazyAttributes? = null
+
+    /**
+     * Registers a custom attribute computed the first time a condition reads [key], then kept for the
+     * life of this user. A value for [key] in [custom] takes precedence. Once computed, the value is
+     * logged with [custom] on exposures.
+     *
+     * Suppliers belong to this instance only: [copy] returns a user without them, and [equals] and
+     * [hashCode] ignore them, so two users differing only in their suppliers compare equal.
+     * Register them again on a copy that should evaluate with them.
+     */
+    fun setCustomSupplier(key: String, supplier: Supplier<out Any?>) {
+        val attributes = lazyCustom ?: LazyAttributes().also { lazyCustom = it }
+        attributes.put(key, supplier)
+    }
+
+    /**
+     * Registers a private attribute computed the first time a condition reads [key], then kept for the
+     * life of this user. A value for [key] in [privateAttributes] takes precedence. Never logged.
+     * Like [setCustomSupplier], not carried over by [copy] and ignored by [equals] and [hashCode].
+     */
+    fun setPrivateAttributeSupplier(key: String, supplier: Supplier<out Any?>) {
+        val attributes = lazyPrivateAttributes ?: LazyAttributes().also { lazyPrivateAttributes = it }
+        attributes.put(key, supplier)
+    }
+
+    internal fun hasAttributeSuppliers(): Boolean {
+        return lazyCustom != null || lazyPrivateAttributes != null
+    }
+
     internal fun getID(idType: String?): String? {
         val lowerIdType = idType?.lowercase()
         if (lowerIdType != "userid" && lowerIdType?.isEmpty() == false) {
@@ -80,12 +120,49 @@ data class StatsigUser private constructor(
             country = this.country,
             locale = this.locale,
             appVersion = this.appVersion,
-            custom = this.custom,
+            custom = getCustomForLogging(),
             statsigEnvironment = this.statsigEnvironment,
             // DO NOT copy privateAttributes to the logging copy!
         )
     }
 
+    // Custom attributes with the supplied values a condition has read so far
+    private fun getCustomForLogging(): Map<String, Any>? {
+        return lazyCustom?.withSuppliedValues(custom) ?: custom
+    }
+
+    /**
+     * A 64-bit fingerprint of every attribute of this user, for use as a cache key. Users with
+     * equal attributes get equal fingerprints whatever the order of their maps. Unlike
+     * [getHashWithoutStableID], it includes stableID and attributes registered with suppliers,
+     * calling any supplier not yet called.
+     */
+    fun getFingerprint(): Long {
+        var hash = Fingerprint.SEED
+        hash = Fingerprint.add(hash, userID)
+        hash = Fingerprint.add(hash, email)
+        hash = Fingerprint.add(hash, ip)
+        hash = Fingerprint.add(hash, userAgent)
+        hash = Fingerprint.add(hash, country)
+        hash = Fingerprint.add(hash, locale)
+        hash = Fingerprint.add(hash, appVersion)
+        hash = Fingerprint.add(hash, statsigEnvironment)
+        hash = Fingerprint.add(hash, customIDs)
+        hash = Fingerprint.add(hash, custom)
+        hash = Fingerprint.add(hash, privateAttributes)
+        hash = Fingerprint.add(hash, lazyCustom?.fingerprint())
+        hash = Fingerprint.add(hash, lazyPrivateAttributes?.fingerprint())
+        return Fingerprint.finish(hash)
+    }
+
+    /**
+     * A 64-bit fingerprint of only the attributes in [fields], read as evaluation reads them, so
+     * users that evaluate alike for the entities [fields] came from share one.
+     */
+    fun getFingerprint(fields: RequiredUserFields): Long {
+        return fields.fingerprintOf(this)
+    }
+
     fun getHashWithoutStableID(): String {
         val map = TreeMap<String, Any>()
         userID?.let { map.put("userID", it) }
@@ -137,7 +214,7 @@ data class StatsigUser private constructor(
             "userAgent" to userAgent,
             "appVersion" to appVersion,
             "country" to country,
-            "custom" to custom,
+            "custom" to getCustomForLogging(),
             "customIDs" to customIDs,
             "email" to email,
             "ip" to ip,
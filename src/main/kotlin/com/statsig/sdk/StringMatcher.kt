@@ -0,0 +1,228 @@
+package com.statsig.sdk
+
+/**
+ * The targets of a str_starts_with_any, str_ends_with_any or str_contains_any/none condition,
+ * compiled at spec load into a trie over case folded characters. Prefixes and suffixes walk a
+ * forward or reversed trie, and contains runs an Aho-Corasick automaton, so a match costs time
+ * in the length of the value rather than the number of targets.
+ */
+internal class StringMatcher private constructor(
+    private val mode: Int,
+    private val trie: Trie,
+    private val targets: List<String>,
+) {
+    fun matches(value: String): Boolean {
+        // Characters are compared one UTF-16 unit at a time, which surrogates don't survive
+        if (hasSurrogate(value)) {
+            return matchesEach(value)
+        }
+        return when (mode) {
+            STARTS_WITH -> matchesPrefix(value)
+            ENDS_WITH -> matchesSuffix(value)
+            else -> matchesInside(value)
+        }
+    }
+
+    private fun matchesPrefix(value: String): Boolean {
+        var node = ROOT
+        if (trie.terminal[node]) {
+            return true
+        }
+        for (i in value.indices) {
+            node = trie.child(node, fold(value[i]))
+            if (node == NO_NODE) {
+                return false
+            }
+            if (trie.terminal[node]) {
+                return true
+            }
+        }
+        return false
+    }
+
+    private fun matchesSuffix(value: String): Boolean {
+        var node = ROOT
+        if (trie.terminal[node]) {
+            return true
+        }
+        for (i in value.indices.reversed()) {
+            node = trie.child(node, fold(value[i]))
+            if (node == NO_NODE) {
+                return false
+            }
+            if (trie.terminal[node]) {
+                return true
+            }
+        }
+        return false
+    }
+
+    private fun matchesInside(value: String): Boolean {
+        var node = ROOT
+        if (trie.terminal[node]) {
+            return true
+        }
+        for (i in value.indices) {
+            val c = fold(value[i])
+            var next = trie.child(node, c)
+            while (next == NO_NODE && node != ROOT) {
+                node = trie.failure[node]
+                next = trie.child(node, c)
+            }
+            node = if (next == NO_NODE) ROOT else next
+            if (trie.terminal[node]) {
+                return true
+            }
+        }
+        return false
+    }
+
+    private fun matchesEach(value: String): Boolean {
+        for (target in targets) {
+            val matched = when (mode) {
+                STARTS_WITH -> value.startsWith(target, true)
+                ENDS_WITH -> value.endsWith(target, true)
+                else -> value.contains(target, true)
+            }
+            if (matched) {
+                return true
+            }
+        }
+        return false
+    }
+
+    /**
+     * Nodes are numbered from the root at 0. The edges leaving node n are
+     * edgeChars/edgeNodes[edgeStart[n] until edgeStart[n + 1]], sorted by character.
+     * A node is terminal when a target ends there, or for contains, at any suffix of it.
+     */
+    private class Trie(
+        val edgeStart: IntArray,
+        val edgeChars: CharArray,
+        val edgeNodes: IntArray,
+        val terminal: BooleanArray,
+        val failure: IntArray,
+    ) {
+        fun child(node: Int, c: Char): Int {
+            var low = edgeStart[node]
+            var high = edgeStart[node + 1] - 1
+            while (low <= high) {
+                val mid = (low + high) ushr 1
+                val midChar = edgeChars[mid]
+                when {
+                    midChar < c -> low = mid + 1
+                    midChar > c -> high = mid - 1
+                    else -> return edgeNodes[mid]
+                }
+            }
+            return NO_NODE
+        }
+    }
+
+    companion object {
+        private const val STARTS_WITH = 0
+        private const val ENDS_WITH = 1
+        private const val CONTAINS = 2
+
+        private const val ROOT = 0
+        private const val NO_NODE = -1
+
+        /**
+         * Compiles the targets of a string operator, or returns null when the operator isn't
+         * one, or its targets aren't a list the trie can represent.
+         */
+        fun compile(operator: String?, target: Any?): StringMatcher? {
+            val mode = when (operator) {
+                Const.STR_STARTS_WITH_ANY -> STARTS_WITH
+                Const.STR_ENDS_WITH_ANY -> ENDS_WITH
+                Const.STR_CONTAINS_ANY, Const.STR_CONTAINS_NONE -> CONTAINS
+                else -> return null
+            }
+            val iterable = target as? Iterable<*> ?: return null
+            val targets = ArrayList<String>()
+            for (item in iterable) {
+                val str = item?.toString() ?: continue
+                if (hasSurrogate(str)) {
+                    return null
+                }
+                targets.add(str)
+            }
+            return StringMatcher(mode, build(targets, mode), targets)
+        }
+
+        // Two characters are equal ignoring case, as String.regionMatches compares them, when their folds are equal
+        private fun fold(c: Char): Char {
+            return Character.toLowerCase(Character.toUpperCase(c))
+        }
+
+        private fun hasSurrogate(value: String): Boolean {
+            for (c in value) {
+                if (Character.isSurrogate(c)) {
+                    return true
+                }
+            }
+            return false
+        }
+
+        private fun build(targets: List<String>, mode: Int): Trie {
+            val children = arrayListOf(HashMap<Char, Int>())
+            val ends = arrayListOf(false)
+            for (target in targets) {
+                var node = ROOT
+                for (i in target.indices) {
+                    val c = fold(target[if (mode == ENDS_WITH) target.length - 1 - i else i])
+                    node = children[node].getOrPut(c) {
+                        children.add(HashMap())
+                        ends.add(false)
+                        children.size - 1
+                    }
+                }
+                ends[node] = true
+            }
+
+            val size = children.size
+            val edgeStart = IntArray(size + 1)
+            for (node in 0 until size) {
+                edgeStart[node + 1] = edgeStart[node] + children[node].size
+            }
+            val edgeChars = CharArray(edgeStart[size])
+            val edgeNodes = IntArray(edgeStart[size])
+            for (node in 0 until size) {
+                var edge = edgeStart[node]
+                for (c in children[node].keys.sorted()) {
+                    edgeChars[edge] = c
+                    edgeNodes[edge] = children[node].getValue(c)
+                    edge++
+                }
+            }
+            val terminal = ends.toBooleanArray()
+            val failure = IntArray(size)
+            if (mode == CONTAINS) {
+                linkFailures(children, terminal, failure)
+            }
+            return Trie(edgeStart, edgeChars, edgeNodes, terminal, failure)
+        }
+
+        // Breadth first, so a node's failure link is final before its children need it
+        private fun linkFailures(children: List<Map<Char, Int>>, terminal: BooleanArray, failure: IntArray) {
+            val queue = ArrayDeque<Int>()
+            for (child in children[ROOT].values) {
+                failure[child] = ROOT
+                queue.addLast(child)
+            }
+            while (queue.isNotEmpty()) {
+                val node = queue.removeFirst()
+                for ((c, child) in children[node]) {
+                    var fallback = failure[node]
+                    while (fallback != ROOT && children[fallback][c] == null) {
+                        fallback = failure[fallback]
+                    }
+                    val link = children[fallback][c]
+                    failure[child] = if (link != null && link != child) link else ROOT
+                    terminal[child] = terminal[child] || terminal[failure[child]]
+                    queue.addLast(child)
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.statsig.sdk
+
+/**
+ * The target list of an any/none or array_contains_* condition, indexed once when specs
+ * are loaded so a check is a hash lookup instead of a scan of the list.
+ */
+internal class TargetSet private constructor(
+    private val strings: Set<String>,
+    private val numbers: Set<Double>,
+    private val ignoreCase: Boolean,
+    // Targets in list order for array_contains_all, with their numeric form
+    private val required: Array<Any?>,
+    private val requiredNumbers: Array<Double?>,
+) {
+    // any, none and their case sensitive forms, comparing the value as a string
+    fun containsString(value: String): Boolean {
+        return strings.contains(if (ignoreCase) fold(value) else value)
+    }
+
+    // array_contains_any/none: a string element equal to a target, or a double equal to a numeric target
+    fun containsAnyOf(array: List<*>): Boolean {
+        for (item in array) {
+            if ((item is String && strings.contains(item)) || (item is Double && numbers.contains(item))) {
+                return true
+            }
+        }
+        return false
+    }
+
+    // array_contains_all: every target is in the array, itself or as a double
+    fun isContainedIn(array: List<*>): Boolean {
+        val lookup: Collection<*> = if (required.size > 1 && array.size > SMALL_ARRAY) HashSet(array) else array
+        for (i in required.indices) {
+            if (lookup.contains(required[i])) {
+                continue
+            }
+            val number = requiredNumbers[i]
+            if (number == null || !lookup.contains(number)) {
+                return false
+            }
+        }
+        return true
+    }
+
+    companion object {
+        private const val SMALL_ARRAY = 8
+        private val NONE = emptyArray<Any?>()
+        private val NO_NUMBERS = emptyArray<Double?>()
+
+        /**
+         * Indexes the target of a list operator, or returns null when the operator isn't
+         * one, or its target has a shape the evaluator checks the slow way.
+         */
+        fun compile(operator: String?, target: Any?): TargetSet? {
+            return when (operator) {
+                Const.ANY, Const.NONE -> stringTargets(target, true)
+                Const.ANY_CASE_SENSITIVE, Const.NONE_CASE_SENSITIVE -> stringTargets(target, false)
+                Const.ARRAY_CONTAINS_ANY, Const.ARRAY_CONTAINS_NONE -> arrayTargets(target)
+                Const.ARRAY_CONTAINS_ALL, Const.NOT_ARRAY_CONTAINS_ALL -> requiredTargets(target)
+                else -> null
+            }
+        }
+
+        /**
+         * Case folds [value] the way String.equals(other, ignoreCase = true) compares characters,
+         * so two strings are equal ignoring case exactly when their folded forms are equal.
+         */
+        fun fold(value: String): String {
+            var i = 0
+            while (i < value.length) {
+                val codePoint = value.codePointAt(i)
+                if (foldCodePoint(codePoint) != codePoint) {
+                    return foldFrom(value, i)
+                }
+                i += Character.charCount(codePoint)
+            }
+            return value
+        }
+
+        private fun foldFrom(value: String, start: Int): String {
+            val folded = StringBuilder(value.length)
+            folded.append(value, 0, start)
+            var i = start
+            while (i < value.length) {
+                val codePoint = value.codePointAt(i)
+                folded.appendCodePoint(foldCodePoint(codePoint))
+                i += Character.charCount(codePoint)
+            }
+            return folded.toString()
+        }
+
+        private fun foldCodePoint(codePoint: Int): Int {
+            return Character.toLowerCase(Character.toUpperCase(codePoint))
+        }
+
+        private fun stringTargets(target: Any?, ignoreCase: Boolean): TargetSet? {
+            val targets = target as? Iterable<*> ?: return null
+            val strings = HashSet<String>()
+            for (item in targets) {
+                val str = item?.toString() ?: continue
+                strings.add(if (ignoreCase) fold(str) else str)
+            }
+            return TargetSet(strings, emptySet(), ignoreCase, NONE, NO_NUMBERS)
+        }
+
+        private fun arrayTargets(target: Any?): TargetSet? {
+            val targets = target as? ArrayList<*> ?: return null
+            val strings = HashSet<String>()
+            val numbers = HashSet<Double>()
+            for (item in targets) {
+                // Anything but strings fails these operators, which the evaluator reports
+                if (item !is String) {
+                    return null
+                }
+                strings.add(item)
+                item.toDoubleOrNull()?.let { numbers.add(it) }
+            }
+            return TargetSet(strings, numbers, false, NONE, NO_NUMBERS)
+        }
+
+        private fun requiredTargets(target: Any?): TargetSet? {
+            if (target == null) {
+                return null
+            }
+            val targets = if (target is Iterable<*>) LinkedHashSet(target.toList()) else setOf(target)
+            val required = targets.toTypedArray()
+            val requiredNumbers = Array(required.size) { required[it].toString().toDoubleOrNull() }
+            return TargetSet(emptySet(), emptySet(), false, required, requiredNumbers)
+        }
+    }
+}
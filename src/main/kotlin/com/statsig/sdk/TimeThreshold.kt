@@ -0,0 +1,50 @@
+package com.statsig.sdk
+
+/**
+ * A current_time condition compiled to the instant it switches at. The condition passes from
+ * [threshold] on, or until it when [passesBefore], so evaluating it compares the clock against
+ * a long instead of formatting the time and parsing it back.
+ */
+internal class TimeThreshold private constructor(
+    // Epoch millis of the first instant on the later side of the switch
+    val threshold: Long,
+    private val passesBefore: Boolean,
+) {
+    fun passes(now: Long): Boolean {
+        return (now < threshold) == passesBefore
+    }
+
+    companion object {
+        // Doubles hold every long up to here exactly, so comparing as longs gives the same answer
+        private const val EXACT_LIMIT = 1L shl 53
+
+        /**
+         * Compiles a current_time condition comparing the time with a fixed target, or returns null
+         * when the operator isn't a comparison or the target isn't a usable number or timestamp.
+         */
+        fun compile(condition: APICondition): TimeThreshold? {
+            return when (condition.operator) {
+                Const.GT -> number(condition.targetValue)?.let { TimeThreshold(Math.floor(it).toLong() + 1, false) }
+                Const.GTE -> number(condition.targetValue)?.let { TimeThreshold(Math.ceil(it).toLong(), false) }
+                Const.LT -> number(condition.targetValue)?.let { TimeThreshold(Math.ceil(it).toLong(), true) }
+                Const.LTE -> number(condition.targetValue)?.let { TimeThreshold(Math.floor(it).toLong() + 1, true) }
+                Const.AFTER -> condition.targetTimestamp?.let { if (it < Long.MAX_VALUE) TimeThreshold(it + 1, false) else null }
+                Const.BEFORE -> condition.targetTimestamp?.let { TimeThreshold(it, true) }
+                else -> null
+            }
+        }
+
+        // The target as the evaluator reads it for a numeric comparison
+        private fun number(target: Any?): Double? {
+            val value = when (target) {
+                is String -> target.toDoubleOrNull()
+                is Number -> target.toDouble()
+                else -> null
+            } ?: return null
+            if (value.isNaN() || value <= -EXACT_LIMIT || value >= EXACT_LIMIT) {
+                return null
+            }
+            return value
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.statsig.sdk
+
+import java.lang.Long.parseLong
+import java.time.Instant
+import java.time.format.DateTimeFormatter
+import java.util.TimeZone
+
+/**
+ * Timestamps for the before/after/on operators, as epoch millis.
+ */
+internal object Timestamps {
+    // Result for a missing or unparseable timestamp, which fails every comparison
+    const val INVALID = Long.MIN_VALUE
+
+    private const val MILLIS_PER_DAY = 24 * 60 * 60 * 1000L
+
+    // Same zone a Calendar created by this JVM would use
+    private val timeZone: TimeZone = TimeZone.getDefault()
+
+    /**
+     * Parses epoch seconds or millis, given as a number or a numeric string, or an ISO-8601 instant.
+     * Throws when a string is neither.
+     */
+    fun parse(input: Any?): Long {
+        return when (input) {
+            is Number -> fromEpoch(input.toLong())
+            is String -> try {
+                fromEpoch(parseLong(input))
+            } catch (e: NumberFormatException) {
+                Instant.from(DateTimeFormatter.ISO_INSTANT.parse(input)).toEpochMilli()
+            }
+            else -> INVALID
+        }
+    }
+
+    /**
+     * Days since the epoch in the default time zone, so two timestamps on the same local date match.
+     */
+    fun epochDay(epochMillis: Long): Long {
+        return Math.floorDiv(epochMillis + timeZone.getOffset(epochMillis), MILLIS_PER_DAY)
+    }
+
+    // Up to 10 characters is taken as seconds, since millis that short would be before 1970
+    private fun fromEpoch(epoch: Long): Long {
+        return if (epoch > -1_000_000_000L && epoch < 10_000_000_000L) epoch * 1000 else epoch
+    }
+}
@@ -0,0 +1,163 @@
+package com.statsig.sdk
+
+/**
+ * The user attributes a download's specs read: each distinct user field of a user_field,
+ * ip_based or ua_based condition, and each ID type that unit_id and user_bucket conditions,
+ * pass percentages and bucket allocations hash. Each gets a slot, so a [PreparedUser] can
+ * look it up once per user for a whole multi-entity call.
+ */
+internal class UserAttributes private constructor(val size: Int) {
+    companion object {
+        val EMPTY = UserAttributes(0)
+
+        /**
+         * Numbers the attributes read by [specs] and points each condition, rule and allocation
+         * at the attribute it reads.
+         */
+        fun build(vararg specs: Map<String, APIConfig>): UserAttributes {
+            val fields = LinkedHashMap<String, MutableList<APICondition>>()
+            val idTypes = LinkedHashMap<String?, IDReaders>()
+            for (configs in specs) {
+                for (config in configs.values) {
+                    for (rule in config.rules) {
+                        idTypes.getOrPut(rule.idType) { IDReaders() }.rules.add(rule)
+                        rule.bucketAllocation?.let {
+                            idTypes.getOrPut(it.idType) { IDReaders() }.allocations.add(it)
+                        }
+                        for (condition in rule.conditions) {
+                            when (Utils.toStringOrEmpty(condition.type).lowercase()) {
+                                Const.USER_FIELD, Const.IP_BASED, Const.UA_BASED ->
+                                    if (condition.userField != null) {
+                                        fields.getOrPut(Utils.toStringOrEmpty(condition.field)) { ArrayList(1) }.add(condition)
+                                    }
+                                Const.UNIT_ID, Const.USER_BUCKET ->
+                                    idTypes.getOrPut(condition.idType) { IDReaders() }.conditions.add(condition)
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (fields.isEmpty() && idTypes.isEmpty()) {
+                return EMPTY
+            }
+            val table = UserAttributes(fields.size + idTypes.size)
+            var slot = 0
+            for ((field, conditions) in fields) {
+                val attribute = UserAttribute(table, slot++, UserField.of(field), null)
+                for (condition in conditions) {
+                    condition.attribute = attribute
+                }
+            }
+            for ((idType, readers) in idTypes) {
+                val attribute = UserAttribute(table, slot++, null, idType)
+                readers.rules.forEach { it.idAttribute = attribute }
+                readers.conditions.forEach { it.idAttribute = attribute }
+                readers.allocations.forEach { it.idAttribute = attribute }
+            }
+            return table
+        }
+    }
+
+    private class IDReaders {
+        val rules = ArrayList<APIRule>()
+        val conditions = ArrayList<APICondition>()
+        val allocations = ArrayList<BucketAllocation>()
+    }
+}
+
+/**
+ * The slot of a user attribute in its download's [UserAttributes]. It reads [field] when
+ * there is one, and otherwise the unit ID of [idType].
+ */
+internal class UserAttribute(
+    val table: UserAttributes,
+    val slot: Int,
+    private val field: UserField?,
+    private val idType: String?,
+) {
+    fun read(user: StatsigUser): Any? {
+        return if (field != null) field.get(user) else user.getID(idType)
+    }
+}
+
+/**
+ * A user's attributes, read at most once each for the length of one multi-entity call, with
+ * their lowercase and numeric forms worked out on first use. Shared by every copy of its
+ * evaluation context.
+ */
+internal class PreparedUser(val user: StatsigUser) {
+    private var table: UserAttributes? = null
+    private var values = arrayOfNulls<Any>(0)
+    private var lowercase = arrayOfNulls<String>(0)
+    private var numbers = DoubleArray(0)
+    private var resolved = ByteArray(0)
+
+    fun get(attribute: UserAttribute): Any? {
+        val slot = prepare(attribute)
+        if (resolved[slot].toInt() and VALUE == 0) {
+            values[slot] = attribute.read(user)
+            resolved[slot] = (resolved[slot].toInt() or VALUE).toByte()
+        }
+        return values[slot]
+    }
+
+    fun getID(attribute: UserAttribute): String? {
+        return get(attribute) as String?
+    }
+
+    /**
+     * The attribute's value lowercased, given [value] is its string form.
+     */
+    fun lowercase(attribute: UserAttribute, value: String): String {
+        val slot = prepare(attribute)
+        if (resolved[slot].toInt() and LOWERCASE == 0) {
+            lowercase[slot] = value.lowercase()
+            resolved[slot] = (resolved[slot].toInt() or LOWERCASE).toByte()
+        }
+        return lowercase[slot]!!
+    }
+
+    /**
+     * The attribute's value as a number, as the evaluator reads it for a numeric comparison.
+     */
+    fun number(attribute: UserAttribute): Double? {
+        val slot = prepare(attribute)
+        if (resolved[slot].toInt() and NUMBER == 0) {
+            val number = toNumber(get(attribute))
+            numbers[slot] = number ?: Double.NaN
+            val flags = if (number == null) NUMBER or NO_NUMBER else NUMBER
+            resolved[slot] = (resolved[slot].toInt() or flags).toByte()
+        }
+        return if (resolved[slot].toInt() and NO_NUMBER != 0) null else numbers[slot]
+    }
+
+    // Attributes from another download are numbered differently
+    private fun prepare(attribute: UserAttribute): Int {
+        if (attribute.table !== table) {
+            val size = attribute.table.size
+            table = attribute.table
+            values = arrayOfNulls(size)
+            lowercase = arrayOfNulls(size)
+            numbers = DoubleArray(size)
+            resolved = ByteArray(size)
+        }
+        return attribute.slot
+    }
+
+    private fun toNumber(value: Any?): Double? {
+        return when (value) {
+            is String -> value.toDoubleOrNull()
+            is ULong -> value.toDouble()
+            is Number -> value.toDouble()
+            else -> null
+        }
+    }
+
+    private companion object {
+        const val VALUE = 1
+        const val LOWERCASE = 2
+        const val NUMBER = 4
+        const val NO_NUMBER = 8
+    }
+}
@@ -0,0 +1,69 @@
+package com.statsig.sdk
+
+/**
+ * A user attribute named by a condition's field, resolved once when the spec loads. The field
+ * picks out a built-in property by its lowercased name, and is otherwise looked up in custom,
+ * then privateAttributes, first as written and then lowercased. Attributes registered with
+ * suppliers come after the ones set directly in each map.
+ */
+internal class UserField private constructor(
+    private val name: String,
+    // The name lowercased, or null when it already is
+    private val lowercaseName: String?,
+    private val property: Property?,
+) {
+    fun get(user: StatsigUser): Any? {
+        var value: Any? = property?.get?.invoke(user)
+
+        val custom = user.custom
+        val lazyCustom = user.lazyCustom
+        if ((value == null || value == Const.EMPTY_STR) && (custom != null || lazyCustom != null)) {
+            value = custom?.let { lookup(it) } ?: lazyCustom?.let { lookup(it) }
+        }
+        val privateAttributes = user.privateAttributes
+        val lazyPrivateAttributes = user.lazyPrivateAttributes
+        if ((value == null || value == Const.EMPTY_STR) && (privateAttributes != null || lazyPrivateAttributes != null)) {
+            value = privateAttributes?.let { lookup(it) } ?: lazyPrivateAttributes?.let { lookup(it) }
+        }
+        return value
+    }
+
+    private fun lookup(attributes: Map<String, Any>): Any? {
+        return attributes[name] ?: lowercaseName?.let { attributes[it] }
+    }
+
+    // Only supplies the lowercased name when the name as written has no supplier
+    private fun lookup(attributes: LazyAttributes): Any? {
+        return attributes.get(name) ?: lowercaseName?.let { attributes.get(it) }
+    }
+
+    private enum class Property(val get: (StatsigUser) -> Any?) {
+        USER_ID({ it.userID }),
+        EMAIL({ it.email }),
+        IP({ it.ip }),
+        USER_AGENT({ it.userAgent }),
+        COUNTRY({ it.country }),
+        LOCALE({ it.locale }),
+        APP_VERSION({ it.appVersion }),
+    }
+
+    companion object {
+        val IP = of("ip")
+        val USER_AGENT = of("userAgent")
+
+        fun of(field: String): UserField {
+            val lowercase = field.lowercase()
+            val property = when (lowercase) {
+                Const.USERID, Const.USER_ID -> Property.USER_ID
+                Const.EMAIL -> Property.EMAIL
+                Const.IP, Const.IPADDRESS, Const.IP_ADDRESS -> Property.IP
+                Const.USERAGENT, Const.USER_AGENT -> Property.USER_AGENT
+                Const.COUNTRY -> Property.COUNTRY
+                Const.LOCALE -> Property.LOCALE
+                Const.APPVERSION, Const.APP_VERSION -> Property.APP_VERSION
+                else -> null
+            }
+            return UserField(field, if (lowercase == field) null else lowercase, property)
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.statsig.sdk
+
+/**
+ * A version like "1.2.3" or "1.2.3-beta" split into its numeric parts for the version_* operators.
+ * Everything from the first dash on is ignored.
+ */
+internal class Version private constructor(
+    // The leading parts, up to the first one that is not an integer
+    private val parts: IntArray,
+    private val partCount: Int,
+) {
+    // Missing trailing parts count as 0, so "1.2" equals "1.2.0". Versions stop being comparable
+    // at the first part that is not an integer, but a difference before it still decides.
+    fun compareTo(other: Version): Int {
+        val size = if (partCount > other.partCount) partCount else other.partCount
+        for (i in 0 until size) {
+            if (!isNumberAt(i) || !other.isNumberAt(i)) {
+                return INCOMPARABLE
+            }
+            val c1 = partAt(i)
+            val c2 = other.partAt(i)
+            if (c1 != c2) {
+                return if (c1 < c2) -1 else 1
+            }
+        }
+        return 0
+    }
+
+    private fun isNumberAt(index: Int): Boolean {
+        return index < parts.size || index >= partCount
+    }
+
+    private fun partAt(index: Int): Int {
+        return if (index < parts.size) parts[index] else 0
+    }
+
+    companion object {
+        const val INCOMPARABLE = Int.MIN_VALUE
+
+        fun parse(input: Any?): Version? {
+            var version = (input as? String) ?: input?.toString() ?: return null
+
+            val dashIndex = version.indexOf('-')
+            if (dashIndex > 0) {
+                version = version.substring(0, dashIndex)
+            }
+
+            val rawParts = version.split(".")
+            val parts = IntArray(rawParts.size)
+            for (i in rawParts.indices) {
+                val part = rawParts[i].trim().toIntOrNull() ?: return Version(parts.copyOf(i), rawParts.size)
+                parts[i] = part
+            }
+            return Version(parts, rawParts.size)
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.statsig.sdk.persistent_storage
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+const val PERSISTENT_WRITE_FLUSH_MS: Long = 1000
+const val PERSISTENT_WRITE_BATCH_SIZE: Int = 100
+const val MAX_PENDING_PERSISTENT_WRITES: Int = 10000
+const val DELETE_SUPPRESSION_MS: Long = 60 * 1000
+
+/**
+ * Counts of the writes that have passed through the persistent storage write queue.
+ *
+ * @property queued saves and deletes accepted from evaluation
+ * @property coalesced writes that replaced one still queued for the same user key and config
+ * @property suppressedDeletes deletes dropped because the storage was known to have nothing to delete
+ * @property written writes that reached the storage
+ * @property failed writes the storage threw on
+ * @property pending writes waiting to be flushed
+ */
+data class PersistentStorageWriteMetrics(
+    val queued: Long,
+    val coalesced: Long,
+    val suppressedDeletes: Long,
+    val written: Long,
+    val failed: Long,
+    val pending: Int,
+) {
+    companion object {
+        @JvmField
+        val EMPTY = PersistentStorageWriteMetrics(0, 0, 0, 0, 0, 0)
+    }
+}
+
+/**
+ * Saves and deletes bound for an [IUserPersistentStorage], written behind evaluation on a
+ * background coroutine. Only the last write queued for a user key and config is written. A delete
+ * is dropped when, within the last [DELETE_SUPPRESSION_MS], a delete of the same config succeeded
+ * or a load found no entry for it, with no write queued here since, since evaluating without
+ * persisted values deletes on every call. Saves by other processes sharing the storage aren't
+ * seen, so one made in that window stays in place until a delete goes through after it ends.
+ *
+ * Batches are flushed every [PERSISTENT_WRITE_FLUSH_MS], or as soon as [PERSISTENT_WRITE_BATCH_SIZE]
+ * writes are queued, in the order they were first queued. Once [MAX_PENDING_PERSISTENT_WRITES]
+ * are waiting, the evaluating thread that queues another write blocks while it flushes the queue
+ * to the storage itself, as a synchronous write would have. Loads see writes that haven't been
+ * flushed yet. Background flushes write the storage on [Dispatchers.IO].
+ */
+internal class PersistentWriteQueue(
+    private val provider: IUserPersistentStorage,
+    private val scope: CoroutineScope,
+    private val onError: (Throwable) -> Unit,
+) {
+    private class Write(val data: StickyValues?)
+
+    private val lock = Any()
+    private val flushLock = Any()
+
+    // By user key, then config name
+    private var pending = LinkedHashMap<String, LinkedHashMap<String, Write>>()
+    private var pendingCount = 0
+    private var flushing: Map<String, Map<String, Write>> = emptyMap()
+    // When each user key and config was last known to have no entry in the storage
+    private val knownAbsent = object : LinkedHashMap<Pair<String, String>, Long>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Pair<String, String>, Long>?): Boolean {
+            return size > MAX_PENDING_PERSISTENT_WRITES
+        }
+    }
+
+    private val flushScheduled = AtomicBoolean(false)
+    private val queued = AtomicLong()
+    private val coalesced = AtomicLong()
+    private val suppressedDeletes = AtomicLong()
+    private val written = AtomicLong()
+    private val failed = AtomicLong()
+
+    private val flushTimer: Job = scope.launch(Dispatchers.IO) {
+        while (isActive) {
+            delay(PERSISTENT_WRITE_FLUSH_MS)
+            flush()
+        }
+    }
+
+    fun save(key: String, configName: String, data: StickyValues) {
+        enqueue(key, configName, Write(data))
+    }
+
+    fun delete(key: String, configName: String) {
+        enqueue(key, configName, DELETE)
+    }
+
+    /**
+     * [values] loaded for [key] with the writes not yet flushed applied, for configs in [names]
+     * when given.
+     */
+    fun applyPending(key: String, values: UserPersistedValues, names: List<String>?): UserPersistedValues {
+        synchronized(lock) {
+            val unflushed = listOfNotNull(flushing[key], pending[key])
+            if (unflushed.isEmpty()) {
+                return values
+            }
+            val applied = HashMap(values)
+            for (writes in unflushed) {
+                for ((configName, write) in writes) {
+                    if (names != null && configName !in names) {
+                        continue
+                    }
+                    if (write.data == null) {
+                        applied.remove(configName)
+                    } else {
+                        applied[configName] = write.data
+                    }
+                }
+            }
+            return applied
+        }
+    }
+
+    /**
+     * Notes the configs in [names] that [values], just loaded for [key], have no entry for.
+     */
+    fun recordLoaded(key: String, values: UserPersistedValues, names: List<String>) {
+        val now = System.currentTimeMillis()
+        synchronized(lock) {
+            for (configName in names) {
+                if (!values.containsKey(configName) && !isUnflushed(key, configName)) {
+                    knownAbsent[key to configName] = now
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes everything queued so far.
+     */
+    fun flush() {
+        flushScheduled.set(false)
+        synchronized(flushLock) {
+            val batch = synchronized(lock) {
+                if (pendingCount == 0) {
+                    return
+                }
+                val batch = pending
+                pending = LinkedHashMap()
+                pendingCount = 0
+                flushing = batch
+                batch
+            }
+            try {
+                for ((key, writes) in batch) {
+                    for ((configName, write) in writes) {
+                        write(key, configName, write)
+                    }
+                }
+            } finally {
+                synchronized(lock) {
+                    flushing = emptyMap()
+                }
+            }
+        }
+    }
+
+    fun shutdown() {
+        flushTimer.cancel()
+        flush()
+    }
+
+    fun getMetrics(): PersistentStorageWriteMetrics {
+        val pendingWrites = synchronized(lock) { pendingCount }
+        return PersistentStorageWriteMetrics(
+            queued = queued.get(),
+            coalesced = coalesced.get(),
+            suppressedDeletes = suppressedDeletes.get(),
+            written = written.get(),
+            failed = failed.get(),
+            pending = pendingWrites,
+        )
+    }
+
+    private fun enqueue(key: String, configName: String, write: Write) {
+        while (true) {
+            val count = synchronized(lock) {
+                tryEnqueue(key, configName, write) ?: return
+            }
+            if (count < 0) {
+                // Full, so make room the way a synchronous write would have taken its time
+                flush()
+                continue
+            }
+            if (count >= PERSISTENT_WRITE_BATCH_SIZE && flushScheduled.compareAndSet(false, true)) {
+                scope.launch(Dispatchers.IO) { flush() }
+            }
+            return
+        }
+    }
+
+    // The number of writes pending after adding this one, -1 when there is no room, or null when it was dropped
+    private fun tryEnqueue(key: String, configName: String, write: Write): Int? {
+        val pair = key to configName
+        val writes = pending[key]
+        val replaced = writes?.get(configName)
+        if (write.data == null && replaced == null && !isUnflushed(key, configName)) {
+            val absentSince = knownAbsent[pair]
+            if (absentSince != null && System.currentTimeMillis() - absentSince < DELETE_SUPPRESSION_MS) {
+                suppressedDeletes.incrementAndGet()
+                return null
+            }
+        }
+        if (replaced == null && pendingCount >= MAX_PENDING_PERSISTENT_WRITES) {
+            return -1
+        }
+
+        queued.incrementAndGet()
+        knownAbsent.remove(pair)
+        if (replaced != null) {
+            coalesced.incrementAndGet()
+        } else {
+            pendingCount++
+        }
+        (writes ?: LinkedHashMap<String, Write>().also { pending[key] = it })[configName] = write
+        return pendingCount
+    }
+
+    private fun write(key: String, configName: String, write: Write) {
+        try {
+            if (write.data == null) {
+                provider.delete(key, configName)
+                synchronized(lock) {
+                    if (pending[key]?.containsKey(configName) != true) {
+                        knownAbsent[key to configName] = System.currentTimeMillis()
+                    }
+                }
+            } else {
+                provider.save(key, configName, write.data)
+            }
+            written.incrementAndGet()
+        } catch (e: Exception) {
+            // The storage may hold anything now, so the next delete goes through
+            synchronized(lock) {
+                knownAbsent.remove(key to configName)
+            }
+            failed.incrementAndGet()
+            onError(e)
+        }
+    }
+
+    private fun isUnflushed(key: String, configName: String): Boolean {
+        return pending[key]?.containsKey(configName) == true || flushing[key]?.containsKey(configName) == true
+    }
+
+    private companion object {
+        val DELETE = Write(null)
+    }
+}
@@ -2,14 +2,22 @@ package com.statsig.sdk.persistent_storage
 
 import com.statsig.sdk.APIConfig
 import com.statsig.sdk.StatsigUser
+import kotlinx.coroutines.CoroutineScope
+
+internal class UserPersistentStorageHandler(
+    private val provider: IUserPersistentStorage?,
+    scope: CoroutineScope,
+    onError: (Throwable) -> Unit,
+) {
+    // Saves and deletes are written behind evaluation
+    private val writes = provider?.let { PersistentWriteQueue(it, scope, onError) }
 
-internal class UserPersistentStorageHandler(private val provider: IUserPersistentStorage?) {
     suspend fun loadSingleIDType(user: StatsigUser, idType: String): PersistedValues? {
         if (provider == null) {
             return null
         }
         val key = getStorageKey(user, idType)
-        return mapOf(key to provider.load(key))
+        return mapOf(key to applyPending(key, provider.load(key), null))
     }
 
     suspend fun loadMultipleIDTypes(user: StatsigUser, experiments: List<APIConfig>): PersistedValues? {
@@ -19,24 +27,39 @@ internal class UserPersistentStorageHandler(private val provider: IUserPersisten
         val experimentsByIDType = experiments.groupBy { it.idType }
         return experimentsByIDType.map { (key, value) ->
             val key = getStorageKey(user, key)
-            key to provider.load(key, value.map { it.name })
+            val names = value.map { it.name }
+            val loaded = provider.load(key, names)
+            writes?.recordLoaded(key, loaded, names)
+            key to applyPending(key, loaded, names)
         }.toMap()
     }
 
+    private fun applyPending(key: String, values: UserPersistedValues, names: List<String>?): UserPersistedValues {
+        return writes?.applyPending(key, values, names) ?: values
+    }
+
     fun save(user: StatsigUser, idType: String, name: String, data: StickyValues) {
-        if (provider == null) {
-            return
-        }
+        val writes = writes ?: return
         val key = getStorageKey(user, idType)
-        provider.save(key, name, data)
+        writes.save(key, name, data)
     }
 
     fun delete(user: StatsigUser, idType: String, name: String) {
-        if (provider == null) {
-            return
-        }
+        val writes = writes ?: return
         val key = getStorageKey(user, idType)
-        provider.delete(key, name)
+        writes.delete(key, name)
+    }
+
+    fun flush() {
+        writes?.flush()
+    }
+
+    fun shutdown() {
+        writes?.shutdown()
+    }
+
+    fun getWriteMetrics(): PersistentStorageWriteMetrics {
+        return writes?.getMetrics() ?: PersistentStorageWriteMetrics.EMPTY
     }
 
     companion object {
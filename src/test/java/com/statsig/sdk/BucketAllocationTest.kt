@@ -0,0 +1,52 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class BucketAllocationTest {
+    private fun bucketRule(operator: String, target: Any, salt: String = "layer_salt"): APIRule {
+        val condition = APICondition("user_bucket", target, operator, null, mapOf("salt" to salt), "userID")
+        condition.bucketHasher = BucketHasher.forUserBucket(condition)
+        condition.targetSet = TargetSet.compile(operator, target)
+        return APIRule(operator, 100.0, true, "rule_$operator$target", null, arrayOf(condition), "userID", null, null, null, null)
+    }
+
+    @Test
+    fun testRanges() {
+        val rules = arrayOf(bucketRule("lt", 500L), bucketRule("lt", 800L), bucketRule("lte", 999L))
+        val allocation = BucketAllocation.build(rules, 0)!!
+
+        assertEquals(3, allocation.ruleCount)
+        assertEquals(0, allocation.ruleFor(0))
+        assertEquals(0, allocation.ruleFor(499))
+        assertEquals(1, allocation.ruleFor(500))
+        assertEquals(1, allocation.ruleFor(799))
+        assertEquals(2, allocation.ruleFor(800))
+        assertEquals(2, allocation.ruleFor(999))
+    }
+
+    @Test
+    fun testBucketLists() {
+        val rules = arrayOf(bucketRule("none", arrayListOf(0L, 1L, "2", 3.0)), bucketRule("any", arrayListOf(0L, 4L)))
+        val allocation = BucketAllocation.build(rules, 0)!!
+
+        assertEquals(1, allocation.ruleFor(0))
+        assertEquals(BucketAllocation.NO_RULE, allocation.ruleFor(2))
+        // 3.0 doesn't match bucket 3 as a string, so the first rule passes
+        assertEquals(0, allocation.ruleFor(3))
+        assertEquals(0, allocation.ruleFor(4))
+        assertEquals(BucketAllocation.NO_RULE, BucketAllocation.build(arrayOf(rules[1]), 0)!!.ruleFor(5))
+    }
+
+    @Test
+    fun testRunStopsAtOtherTargeting() {
+        val gate = APICondition("pass_gate", "a_gate", null, null, null, "userID")
+        val gated = APIRule("gated", 100.0, true, "gated", null, arrayOf(gate), "userID", null, null, null, null)
+        val rules = arrayOf(bucketRule("lt", 500L), bucketRule("lt", 800L, salt = "other_salt"), gated)
+
+        assertEquals(1, BucketAllocation.build(rules, 0)!!.ruleCount)
+        assertEquals(1, BucketAllocation.build(rules, 1)!!.ruleCount)
+        assertNull(BucketAllocation.build(rules, 2))
+    }
+}
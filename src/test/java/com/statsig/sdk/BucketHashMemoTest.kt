@@ -0,0 +1,56 @@
+package com.statsig.sdk
+
+import com.google.gson.GsonBuilder
+import com.google.gson.ToNumberPolicy
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+
+class BucketHashMemoTest {
+    private lateinit var driver: StatsigServer
+    private lateinit var evaluator: Evaluator
+    private val user = StatsigUser("123")
+    private val experimentSalt = "f8aeba58-18fb-4f36-9bbd-4c611447a912"
+
+    @Before
+    fun setUp() {
+        driver = StatsigServer.create()
+        driver.initializeAsync("secret-local", StatsigOptions(localMode = true)).get()
+        evaluator = TestUtilJava.getEvaluatorFromStatsigServer(driver)
+
+        val gson = GsonBuilder().setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE).create()
+        val specs = StatsigE2ETest::class.java.getResource("/download_config_specs.json")?.readText() ?: ""
+        evaluator.specStore.setDownloadedConfigs(gson.fromJson(specs, APIDownloadedConfigs::class.java))
+        TestUtilJava.setInitReasonFromSpecStore(evaluator.specStore, EvaluationReason.NETWORK)
+    }
+
+    @After
+    fun tearDown() {
+        driver.shutdown()
+    }
+
+    @Test
+    fun testHashesAreRemembered() {
+        val bucketHashes = HashMap<BucketHashKey, ULong>()
+        val context = EvaluationContext(user, bucketHashes = bucketHashes)
+        evaluator.getConfig(context, "sample_experiment")
+
+        val key = BucketHashKey("$experimentSalt.", "123")
+        assertEquals(BucketHasher("$experimentSalt.").hash("123"), bucketHashes[key])
+        assertEquals(2, bucketHashes.size)
+    }
+
+    @Test
+    fun testRememberedHashIsUsed() {
+        val key = BucketHashKey("$experimentSalt.", "123")
+
+        val control = EvaluationContext(user, bucketHashes = hashMapOf(key to 1000UL))
+        evaluator.getConfig(control, "sample_experiment")
+        assertEquals("Control", control.evaluation.groupName)
+
+        val test = EvaluationContext(user, bucketHashes = hashMapOf(key to 999UL))
+        evaluator.getConfig(test, "sample_experiment")
+        assertEquals("Test", test.evaluation.groupName)
+    }
+}
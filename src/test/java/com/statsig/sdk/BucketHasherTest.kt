@@ -0,0 +1,32 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.security.MessageDigest
+
+class BucketHasherTest {
+    private fun sha256Prefix(input: String): ULong {
+        val bytes = MessageDigest.getInstance("SHA-256").digest(input.toByteArray())
+        return ByteBuffer.wrap(bytes).long.toULong()
+    }
+
+    @Test
+    fun testMatchesHashOfWholeInput() {
+        val hasher = BucketHasher("config_salt.rule_salt.")
+        val unitIDs = listOf("", "user-1", "ünïcödé", "😀", "x".repeat(300))
+        for (unitID in unitIDs) {
+            assertEquals(unitID, sha256Prefix("config_salt.rule_salt.$unitID"), hasher.hash(unitID))
+        }
+    }
+
+    @Test
+    fun testPrefixes() {
+        val rule = APIRule("rule", 50.0, true, "rule_id", null, arrayOf(), "userID", null, null, null, null)
+        val config = APIConfig("gate", "feature_gate", true, "config_salt", false, true, arrayOf(rule), "userID", "feature_gate", null, null, forwardAllExposures = null)
+        assertEquals("config_salt.rule_id.", BucketHasher.forRule(config, rule).prefix)
+
+        val condition = APICondition("user_bucket", 50L, "lt", null, mapOf("salt" to "bucket_salt"), "userID")
+        assertEquals("bucket_salt.", BucketHasher.forUserBucket(condition).prefix)
+    }
+}
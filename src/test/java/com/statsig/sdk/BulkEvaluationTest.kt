@@ -0,0 +1,170 @@
+package com.statsig.sdk
+
+import com.statsig.sdk.TestUtil.Companion.captureEvents
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.runBlocking
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertThrows
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Consumer
+
+class BulkEvaluationTest {
+    private lateinit var eventLogInputCompletable: CompletableDeferred<LogEventInput>
+    private lateinit var driver: StatsigServer
+    private lateinit var options: StatsigOptions
+
+    private val entityNames = setOf(
+        "always_on_gate",
+        "on_for_statsig_email",
+        "test_config",
+        "sample_experiment",
+        "a_layer",
+    )
+
+    @Before
+    fun setUp() {
+        eventLogInputCompletable = CompletableDeferred()
+
+        val downloadConfigSpecsResponse =
+            StatsigE2ETest::class.java.getResource("/download_config_specs.json")?.readText() ?: ""
+
+        val server = MockWebServer()
+        server.apply {
+            dispatcher = object : Dispatcher() {
+                @Throws(InterruptedException::class)
+                override fun dispatch(request: RecordedRequest): MockResponse {
+                    if ("/v1/download_config_specs" in request.path!!) {
+                        return MockResponse().setResponseCode(200).setBody(downloadConfigSpecsResponse)
+                    }
+                    if ("/v1/log_event" in request.path!!) {
+                        return TestUtil.mockLogEventEndpoint(request, eventLogInputCompletable)
+                    }
+                    return MockResponse().setResponseCode(404)
+                }
+            }
+        }
+
+        options = StatsigOptions().apply {
+            api = server.url("/v1").toString()
+            disableDiagnostics = true
+        }
+
+        driver = StatsigServer.create()
+    }
+
+    private fun createUsers(count: Int): List<StatsigUser> {
+        return (0 until count).map {
+            StatsigUser("user_$it").apply {
+                email = if (it % 2 == 0) "user_$it@statsig.com" else "user_$it@example.com"
+            }
+        }
+    }
+
+    @Test
+    fun testMatchesSingleUserEvaluation() = runBlocking {
+        driver.initialize("secret-local", options)
+        val users = createUsers(500)
+        val results = ConcurrentLinkedQueue<BulkEvaluationResult>()
+
+        val completed = driver.evaluateInBulk(
+            users.iterator(),
+            entityNames,
+            Consumer { results.add(it) },
+            BulkEvaluationOptions(batchSize = 16, disableExposureLogging = true),
+        )
+
+        assertTrue(completed)
+        assertEquals(users.size * entityNames.size, results.size)
+        for (result in results) {
+            when (result.type) {
+                EntityType.GATE -> {
+                    val gate = driver.getFeatureGate(result.user, result.name, GetFeatureGateOptions(true))
+                    assertEquals(gate.value, result.value)
+                    assertEquals(gate.ruleID, result.ruleID)
+                }
+                EntityType.CONFIG -> {
+                    val config = driver.getConfigWithExposureLoggingDisabled(result.user, result.name)
+                    assertEquals(config.value, result.jsonValue)
+                    assertEquals(config.ruleID, result.ruleID)
+                    assertEquals(config.groupName, result.groupName)
+                }
+                EntityType.LAYER -> {
+                    val layer = driver.getLayerWithExposureLoggingDisabled(result.user, result.name)
+                    assertEquals(layer.value, result.jsonValue)
+                    assertEquals(layer.ruleID, result.ruleID)
+                }
+            }
+        }
+        driver.shutdown()
+    }
+
+    @Test
+    fun testCustomExecutorAndStream() = runBlocking {
+        driver.initialize("secret-local", options)
+        val executor = Executors.newFixedThreadPool(3)
+        val count = AtomicInteger(0)
+
+        val completed = driver.evaluateInBulk(
+            createUsers(100).stream(),
+            setOf("always_on_gate", "not_a_real_gate"),
+            Consumer {
+                assertEquals("always_on_gate", it.name)
+                assertTrue(it.value)
+                count.incrementAndGet()
+            },
+            BulkEvaluationOptions(executor = executor, batchSize = 7, maxPendingBatches = 2, disableExposureLogging = true),
+        )
+
+        executor.shutdown()
+        driver.shutdown()
+        assertTrue(completed)
+        assertEquals(100, count.get())
+    }
+
+    @Test
+    fun testConsumerFailureStopsEvaluation() = runBlocking {
+        driver.initialize("secret-local", options)
+
+        val count = AtomicInteger()
+        val thrown = assertThrows(IllegalStateException::class.java) {
+            driver.evaluateInBulk(
+                createUsers(100).iterator(),
+                setOf("always_on_gate"),
+                Consumer {
+                    count.incrementAndGet()
+                    throw IllegalStateException("consumer failed")
+                },
+                BulkEvaluationOptions(disableExposureLogging = true, batchSize = 10, maxPendingBatches = 1),
+            )
+        }
+
+        driver.shutdown()
+        assertEquals("consumer failed", thrown.message)
+        assertEquals(1, count.get())
+    }
+
+    @Test
+    fun testExposureLogging() = runBlocking {
+        driver.initialize("secret-local", options)
+
+        driver.evaluateInBulk(
+            createUsers(4).iterator(),
+            entityNames,
+            Consumer { },
+        )
+        driver.shutdown()
+
+        // One exposure per user for each of the two gates and two configs, none for the layer
+        val events = captureEvents(eventLogInputCompletable)
+        assertEquals(16, events.size)
+    }
+}
@@ -0,0 +1,63 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class ConstantOutcomeTest {
+    private val public = APICondition("public", null, null, null, null, "userID")
+    private val country = APICondition("user_field", arrayListOf("US"), "any", "country", null, "userID")
+
+    private fun rule(id: String, passPercentage: Double, vararg conditions: APICondition, delegate: String? = null): APIRule {
+        return APIRule(id, passPercentage, "value_$id", id, null, arrayOf(*conditions), "userID", "group_$id", delegate, true, 101)
+    }
+
+    private fun config(vararg rules: APIRule, enabled: Boolean = true): APIConfig {
+        return APIConfig("a_config", "dynamic_config", true, "salt", "default", enabled, arrayOf(*rules), "userID", "dynamic_config", null, null, forwardAllExposures = null)
+    }
+
+    private fun build(config: APIConfig): ConstantOutcome? {
+        ConstantOutcome.build(EnvironmentSpecialization.build(null), mapOf("a_config" to config))
+        return config.constantOutcome
+    }
+
+    @Test
+    fun testRecognizesConstantConfigs() {
+        assertNotNull(build(config(rule("country", 100.0, country), enabled = false)))
+        assertNotNull(build(config()))
+        assertNotNull(build(config(rule("all", 100.0, public, public), rule("country", 100.0, country))))
+        assertNotNull(build(config(rule("none", 0.0))))
+
+        assertNull(build(config(rule("country", 100.0, country), rule("all", 100.0, public))))
+        assertNull(build(config(rule("half", 50.0, public))))
+        assertNull(build(config(rule("delegated", 100.0, public, delegate = "an_experiment"))))
+    }
+
+    @Test
+    fun testAppliesRuleFields() {
+        val evaluation = ConfigEvaluation()
+        build(config(rule("all", 100.0, public)))!!.applyTo(evaluation)
+        assertTrue(evaluation.booleanValue)
+        assertEquals("value_all", evaluation.jsonValue)
+        assertEquals("all", evaluation.ruleID)
+        assertEquals("group_all", evaluation.groupName)
+        assertEquals(101L, evaluation.samplingRate)
+        assertTrue(evaluation.isExperimentGroup)
+
+        build(config(rule("none", 0.0, public)))!!.applyTo(evaluation)
+        assertFalse(evaluation.booleanValue)
+        assertEquals("default", evaluation.jsonValue)
+        assertEquals("none", evaluation.ruleID)
+    }
+
+    @Test
+    fun testNestedEvaluation() {
+        val outcome = build(config(enabled = false))!!
+        assertFalse(outcome.nestedEvaluation.booleanValue)
+        assertEquals(Const.DISABLED, outcome.nestedEvaluation.ruleID)
+        assertTrue(outcome.nestedEvaluation.secondaryExposures.isEmpty())
+    }
+}
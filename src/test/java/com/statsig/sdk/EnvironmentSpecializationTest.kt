@@ -0,0 +1,72 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class EnvironmentSpecializationTest {
+    private val production = mapOf("tier" to "production")
+
+    private fun condition(type: String, operator: String?, target: Any?, field: String? = "tier"): APICondition {
+        val condition = APICondition(type, target, operator, field, null, "userID")
+        condition.targetSet = TargetSet.compile(operator, target)
+        return condition
+    }
+
+    private fun rule(id: String, vararg conditions: APICondition): APIRule {
+        return APIRule(id, 100.0, true, id, null, arrayOf(*conditions), "userID", null, null, null, null)
+    }
+
+    private fun gate(vararg rules: APIRule): APIConfig {
+        return APIConfig("a_gate", "feature_gate", true, "salt", false, true, arrayOf(*rules), "userID", "feature_gate", null, null, forwardAllExposures = null)
+    }
+
+    @Test
+    fun testPrunesRulesThatCantPass() {
+        val staging = rule("staging", condition("environment_field", "any", arrayListOf("staging")))
+        val country = rule("country", condition("user_field", "any", arrayListOf("US"), field = "country"))
+        val prod = rule("prod", condition("environment_field", "any", arrayListOf("PRODUCTION")), condition("public", null, null))
+        val unreachable = rule("unreachable", condition("user_field", "any", arrayListOf("CA"), field = "country"))
+        val config = gate(staging, country, prod, unreachable)
+
+        EnvironmentSpecialization.build(production, mapOf("a_gate" to config))
+
+        assertEquals(listOf(country, prod), config.specializedRules!!.rules.toList())
+        assertEquals(false, staging.environmentResult!!.value)
+        assertNull(country.environmentResult)
+        assertEquals(true, prod.environmentResult!!.value)
+    }
+
+    @Test
+    fun testKeepsRulesWithSideEffects() {
+        val envCondition = condition("environment_field", "none", arrayListOf("production"))
+        val nestedGate = rule("nested", envCondition, condition("pass_gate", null, "other_gate"))
+        val unsupported = rule("unsupported", condition("environment_field", "any", arrayListOf("dev")), condition("user_field", "unknown_op", 1))
+        val last = rule("last", condition("environment_field", "any", arrayListOf("dev")))
+        val config = gate(nestedGate, unsupported, last)
+
+        EnvironmentSpecialization.build(production, mapOf("a_gate" to config))
+
+        // Nothing can be dropped, but the environment conditions are still decided
+        assertNull(config.specializedRules)
+        assertNull(nestedGate.environmentResult)
+        assertEquals(false, envCondition.environmentResult!!.value)
+        assertNull(unsupported.environmentResult)
+        assertEquals(false, last.environmentResult!!.value)
+    }
+
+    @Test
+    fun testMatchesEqualEnvironmentsOnly() {
+        val environment = HashMap(production)
+        val specialization = EnvironmentSpecialization.build(environment)
+        // Later changes to the options don't apply to specs already loaded
+        environment["tier"] = "staging"
+
+        assertTrue(specialization.matches(StatsigUser("a").apply { statsigEnvironment = mapOf("tier" to "production") }))
+        assertFalse(specialization.matches(StatsigUser("a").apply { statsigEnvironment = environment }))
+        assertFalse(specialization.matches(StatsigUser("a")))
+        assertTrue(EnvironmentSpecialization.build(null).matches(StatsigUser("a")))
+    }
+}
@@ -0,0 +1,147 @@
+package com.statsig.sdk
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.runBlocking
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+
+class EvaluationCacheExposureTest {
+    // A gate and an experiment that only read email, through a nested gate
+    private val downloadConfigSpecsResponse = """
+        {
+          "has_updates": true,
+          "time": 1,
+          "feature_gates": [
+            {
+              "name": "is_employee", "type": "feature_gate", "entity": "feature_gate", "version": 1,
+              "salt": "is_employee", "enabled": true, "isActive": true, "defaultValue": false, "idType": "userID",
+              "rules": [
+                {
+                  "name": "employees", "id": "employees", "salt": "employees", "passPercentage": 100,
+                  "returnValue": true, "idType": "userID",
+                  "conditions": [
+                    { "type": "user_field", "field": "email", "operator": "any", "targetValue": ["employee@statsig.com"], "idType": "userID" }
+                  ]
+                }
+              ]
+            },
+            {
+              "name": "employee_gate", "type": "feature_gate", "entity": "feature_gate", "version": 1,
+              "salt": "employee_gate", "enabled": true, "isActive": true, "defaultValue": false, "idType": "userID",
+              "rules": [
+                {
+                  "name": "via_is_employee", "id": "via_is_employee", "salt": "via_is_employee", "passPercentage": 100,
+                  "returnValue": true, "idType": "userID",
+                  "conditions": [
+                    { "type": "pass_gate", "targetValue": "is_employee", "idType": "userID" }
+                  ]
+                }
+              ]
+            }
+          ],
+          "dynamic_configs": [
+            {
+              "name": "employee_experiment", "type": "dynamic_config", "entity": "experiment", "version": 1,
+              "salt": "employee_experiment", "enabled": true, "isActive": true, "defaultValue": {}, "idType": "userID",
+              "rules": [
+                {
+                  "name": "employee_group", "id": "employee_group", "salt": "employee_group", "passPercentage": 100,
+                  "returnValue": { "color": "blue" }, "idType": "userID", "groupName": "Employees",
+                  "conditions": [
+                    { "type": "pass_gate", "targetValue": "is_employee", "idType": "userID" }
+                  ]
+                }
+              ]
+            }
+          ],
+          "layer_configs": []
+        }
+    """.trimIndent()
+
+    private lateinit var eventLogInputCompletable: CompletableDeferred<LogEventInput>
+    private lateinit var server: MockWebServer
+
+    @Before
+    fun setup() {
+        server = MockWebServer()
+        server.apply {
+            dispatcher = object : Dispatcher() {
+                @Throws(InterruptedException::class)
+                override fun dispatch(request: RecordedRequest): MockResponse {
+                    if ("/v1/download_config_specs" in request.path!!) {
+                        return MockResponse().setResponseCode(200).setBody(downloadConfigSpecsResponse)
+                    }
+                    if ("/v1/log_event" in request.path!!) {
+                        return TestUtil.mockLogEventEndpoint(request, eventLogInputCompletable)
+                    }
+                    return MockResponse().setResponseCode(404)
+                }
+            }
+        }
+    }
+
+    @After
+    fun tearDown() {
+        server.shutdown()
+    }
+
+    // Evaluates for two users that differ only in what the specs don't read, returning the
+    // exposures logged and the cache hits
+    private fun evaluateTwice(evaluationCacheSize: Int): Pair<Array<StatsigEvent>, Long?> = runBlocking {
+        eventLogInputCompletable = CompletableDeferred()
+        val options = StatsigOptions().apply {
+            api = server.url("/v1").toString()
+            disableDiagnostics = true
+            this.evaluationCacheSize = evaluationCacheSize
+        }
+        val driver = StatsigServer.create()
+        driver.initialize("secret-local", options)
+        val evaluator = TestUtilJava.getEvaluatorFromStatsigServer(driver)
+
+        for (userID in listOf("first", "second")) {
+            val user = StatsigUser(userID).apply { email = "employee@statsig.com" }
+            assertEquals(true, driver.checkGateSync(user, "employee_gate"))
+            assertEquals("blue", driver.getExperimentSync(user, "employee_experiment").getString("color", ""))
+        }
+        val hits = evaluator.evaluationCache?.hits
+
+        driver.shutdown()
+        Pair(TestUtil.captureEvents(eventLogInputCompletable), hits)
+    }
+
+    private fun describe(event: StatsigEvent): List<Any?> {
+        val metadata = event.eventMetadata ?: emptyMap()
+        return listOf(
+            event.eventName,
+            event.user?.userID,
+            metadata["gate"] ?: metadata["config"],
+            metadata["gateValue"],
+            metadata["ruleID"],
+            metadata["reason"],
+            event.secondaryExposures,
+        )
+    }
+
+    @Test
+    fun testCacheHitsLogLikeEvaluations() {
+        val (cachedEvents, hits) = evaluateTwice(100)
+        val (uncachedEvents, _) = evaluateTwice(0)
+
+        // The second user's gate and experiment came from the cache
+        assertEquals(2L, hits)
+        assertEquals(4, cachedEvents.size)
+        assertEquals(uncachedEvents.map { describe(it) }, cachedEvents.map { describe(it) })
+
+        val exposure = mapOf("gate" to "is_employee", "gateValue" to "true", "ruleID" to "employees")
+        for (event in cachedEvents) {
+            assertEquals(arrayListOf(exposure), event.secondaryExposures)
+            assertEquals(EvaluationReason.NETWORK.toString(), event.eventMetadata?.get("reason"))
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class EvaluationCacheTest {
+    private fun gate(name: String, version: Long?, condition: APICondition): Pair<String, APIConfig> {
+        val rule = APIRule("rule", 100.0, true, "rule", null, arrayOf(condition), "userID", null, null, null, null)
+        return name to APIConfig(name, "feature_gate", true, "salt", false, true, arrayOf(rule), "userID", "feature_gate", null, null, version = version, forwardAllExposures = null)
+    }
+
+    private fun email(target: String) = APICondition("user_field", arrayListOf(target), "any", "email", null, "userID")
+
+    private fun passGate(name: String) = APICondition("pass_gate", name, null, null, null, "userID")
+
+    private fun snapshot(vararg gates: Pair<String, APIConfig>): SpecSnapshot {
+        return SpecSnapshot(mapOf(*gates), emptyMap(), emptyMap(), emptyMap(), 0, null)
+    }
+
+    private fun node(name: String) = SpecNode(EntityType.GATE, name)
+
+    @Test
+    fun testKeysOnlyReadAttributes() {
+        val specs = snapshot(gate("employees", 1, email("a@statsig.com")))
+        val cache = EvaluationCache(10)
+        val a = StatsigUser("a").apply { email = "a@statsig.com" }
+        val b = StatsigUser("b").apply { email = "a@statsig.com"; country = "US" }
+
+        val key = cache.keyFor(specs, specs, node("employees"), a)!!
+        assertEquals(key, cache.keyFor(specs, specs, node("employees"), b))
+        // Results computed against older specs are neither read nor written
+        assertNull(cache.keyFor(specs, snapshot(), node("employees"), a))
+
+        val evaluation = ConfigEvaluation(booleanValue = true, ruleID = "rule")
+        cache.put(specs, key, evaluation)
+        val cached = cache.get(specs, key)!!
+        assertEquals("rule", cached.ruleID)
+        assertNotSame(evaluation, cached)
+        assertNotSame(evaluation.secondaryExposures, cached.secondaryExposures)
+    }
+
+    @Test
+    fun testKeysCopyTheValuesRead() {
+        val tags = APICondition("user_field", arrayListOf("beta"), "any", "tags", null, "userID")
+        val specs = snapshot(gate("tagged", 1, tags))
+        val cache = EvaluationCache(10)
+        val list = mutableListOf("beta")
+        val user = StatsigUser("a").apply { custom = mapOf("tags" to list) }
+
+        val key = cache.keyFor(specs, specs, node("tagged"), user)!!
+        list.add("alpha")
+        assertNotEquals(key, cache.keyFor(specs, specs, node("tagged"), user))
+        assertEquals(key, cache.keyFor(specs, specs, node("tagged"), StatsigUser("b").apply { custom = mapOf("tags" to listOf("beta")) }))
+    }
+
+    @Test
+    fun testSkipsUsersWithSuppliers() {
+        val specs = snapshot(gate("employees", 1, email("a@statsig.com")))
+        val cache = EvaluationCache(10)
+        var calls = 0
+        val user = StatsigUser("a").apply { setCustomSupplier("plan") { calls++; "pro" } }
+
+        assertNull(cache.keyFor(specs, specs, node("employees"), user))
+        assertEquals(0, calls)
+    }
+
+    @Test
+    fun testDropsChangedSpecsAndTheirDependents() {
+        val before = snapshot(
+            gate("employees", 1, email("a@statsig.com")),
+            gate("beta", 1, passGate("employees")),
+            gate("other", 1, email("b@statsig.com")),
+            gate("unversioned", null, email("c@statsig.com")),
+        )
+        val after = snapshot(
+            gate("employees", 2, email("a@statsig.com")),
+            gate("beta", 1, passGate("employees")),
+            gate("other", 1, email("b@statsig.com")),
+            gate("unversioned", null, email("c@statsig.com")),
+        )
+        assertEquals(setOf(node("employees"), node("beta"), node("unversioned")), EvaluationCache.changedNodes(before, after))
+
+        val cache = EvaluationCache(10)
+        val user = StatsigUser("a")
+        for (name in listOf("beta", "other")) {
+            cache.put(before, cache.keyFor(before, before, node(name), user)!!, ConfigEvaluation(ruleID = name))
+        }
+        val beta = cache.keyFor(after, after, node("beta"), user)!!
+        val other = cache.keyFor(after, after, node("other"), user)!!
+        assertNull(cache.get(after, beta))
+        assertNotNull(cache.get(after, other))
+    }
+
+    @Test
+    fun testEvictsLeastRecentlyUsed() {
+        val specs = snapshot(gate("employees", 1, email("a@statsig.com")))
+        val cache = EvaluationCache(2)
+        val keys = listOf("a", "b", "c").map {
+            cache.keyFor(specs, specs, node("employees"), StatsigUser(it).apply { email = it })!!
+        }
+        cache.put(specs, keys[0], ConfigEvaluation())
+        cache.put(specs, keys[1], ConfigEvaluation())
+        cache.get(specs, keys[0])
+        cache.put(specs, keys[2], ConfigEvaluation())
+
+        assertNotNull(cache.get(specs, keys[0]))
+        assertNull(cache.get(specs, keys[1]))
+        assertNotNull(cache.get(specs, keys[2]))
+    }
+}
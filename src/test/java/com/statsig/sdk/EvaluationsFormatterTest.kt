@@ -0,0 +1,52 @@
+package com.statsig.sdk
+
+import com.google.gson.GsonBuilder
+import com.google.gson.ToNumberPolicy
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+
+class EvaluationsFormatterTest {
+    private lateinit var driver: StatsigServer
+    private lateinit var evaluator: Evaluator
+
+    @Before
+    fun setUp() {
+        driver = StatsigServer.create()
+        driver.initializeAsync("secret-local", StatsigOptions(localMode = true)).get()
+        evaluator = TestUtilJava.getEvaluatorFromStatsigServer(driver)
+
+        val gson = GsonBuilder().setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE).create()
+        val specs = StatsigE2ETest::class.java.getResource("/evaluator_test_config_specs.json")?.readText() ?: ""
+        evaluator.specStore.setDownloadedConfigs(gson.fromJson(specs, APIDownloadedConfigs::class.java))
+        TestUtilJava.setInitReasonFromSpecStore(evaluator.specStore, EvaluationReason.NETWORK)
+    }
+
+    @After
+    fun tearDown() {
+        driver.shutdown()
+    }
+
+    @Test
+    fun testKeysExposuresOnGateValueAndRule() {
+        // Two gates reporting exposures of the same gate with different results
+        val exposures = mapOf(
+            "test_public" to SecondaryExposure("a_gate", "true", "rule_1"),
+            "test_email" to SecondaryExposure("a_gate", "false", "default"),
+        )
+        val evalFun = { ctx: EvaluationContext, config: APIConfig ->
+            exposures[config.name]?.let { ctx.evaluation.secondaryExposures = arrayListOf(it) }
+            Unit
+        }
+        val context = EvaluationContext(StatsigUser("123"), hash = HashAlgo.NONE)
+        val response = EvaluationsFormatter(evaluator.specStore, evalFun, context).getFormattedResponse()
+
+        val passKey = Hashing.djb2("a_gate:true:rule_1")
+        val failKey = Hashing.djb2("a_gate:false:default")
+        assertEquals(arrayListOf(passKey), response.featureGates["test_public"]?.secondaryExposures)
+        assertEquals(arrayListOf(failKey), response.featureGates["test_email"]?.secondaryExposures)
+        assertEquals(mapOf("gate" to "a_gate", "gateValue" to "true", "ruleID" to "rule_1"), response.exposures[passKey])
+        assertEquals(mapOf("gate" to "a_gate", "gateValue" to "false", "ruleID" to "default"), response.exposures[failKey])
+    }
+}
@@ -0,0 +1,77 @@
+package com.statsig.sdk
+
+import com.google.gson.GsonBuilder
+import com.google.gson.ToNumberPolicy
+import org.junit.After
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import java.lang.management.ManagementFactory
+
+class EvaluatorAllocationTest {
+    private lateinit var driver: StatsigServer
+    private lateinit var evaluator: Evaluator
+    private val threadBean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+
+    @Before
+    fun setUp() {
+        assumeTrue(threadBean != null && threadBean.isThreadAllocatedMemorySupported)
+        threadBean!!.isThreadAllocatedMemoryEnabled = true
+
+        driver = StatsigServer.create()
+        driver.initializeAsync("secret-local", StatsigOptions(localMode = true)).get()
+        evaluator = TestUtilJava.getEvaluatorFromStatsigServer(driver)
+
+        val gson = GsonBuilder().setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE).create()
+        val specs = StatsigE2ETest::class.java.getResource("/evaluator_test_config_specs.json")?.readText() ?: ""
+        evaluator.specStore.setDownloadedConfigs(gson.fromJson(specs, APIDownloadedConfigs::class.java))
+        TestUtilJava.setInitReasonFromSpecStore(evaluator.specStore, EvaluationReason.NETWORK)
+    }
+
+    @After
+    fun tearDown() {
+        if (::driver.isInitialized) {
+            driver.shutdown()
+        }
+    }
+
+    // Keeps what each call builds reachable, so neither loop is measured after escape analysis
+    private var sink: Any? = null
+
+    private fun bytesPerCall(call: () -> Any): Long {
+        val iterations = 100_000
+        repeat(iterations) { sink = call() }
+
+        val threadID = Thread.currentThread().id
+        val before = threadBean!!.getThreadAllocatedBytes(threadID)
+        repeat(iterations) { sink = call() }
+        val after = threadBean.getThreadAllocatedBytes(threadID)
+        return (after - before) / iterations
+    }
+
+    private fun bytesPerCheckGate(user: StatsigUser, gateName: String): Long {
+        return bytesPerCall { EvaluationContext(user).also { evaluator.checkGate(it, gateName) } }
+    }
+
+    @Test
+    fun testSimpleGateOnlyAllocatesItsResult() {
+        val user = StatsigUser("123").apply { email = "jkw@statsig.com" }
+
+        // The context and the result it carries, which is all a simple gate should need. Measured
+        // rather than fixed, since object sizes vary with the JVM and its settings, and allowed
+        // twice that so only a return to copying contexts and exposure lists per call fails it.
+        val result = bytesPerCall {
+            EvaluationContext(user).also {
+                it.evaluation.evaluationDetails = EvaluationDetails(0, 0, EvaluationReason.NETWORK)
+            }
+        }
+        for (gateName in listOf("test_public", "test_email")) {
+            val gate = bytesPerCheckGate(user, gateName)
+            assertTrue(
+                "checkGate($gateName) allocated $gate bytes per call, building its result takes $result",
+                gate <= 2 * result,
+            )
+        }
+    }
+}
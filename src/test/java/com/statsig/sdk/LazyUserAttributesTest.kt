@@ -0,0 +1,69 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.function.Supplier
+
+class LazyUserAttributesTest {
+    @Test
+    fun testSuppliersRunOnceWhenRead() {
+        var calls = 0
+        val user = StatsigUser("a_user")
+        user.setCustomSupplier("plan") { calls++; "pro" }
+
+        assertEquals(0, calls)
+        assertEquals("pro", UserField.of("plan").get(user))
+        assertEquals("pro", UserField.of("PLAN").get(user))
+        assertEquals(1, calls)
+    }
+
+    @Test
+    fun testSetValuesTakePrecedence() {
+        val user = StatsigUser("a_user").apply {
+            custom = mapOf("plan" to "free")
+            privateAttributes = mapOf("secret" to 1L)
+        }
+        user.setCustomSupplier("plan") { "pro" }
+        user.setCustomSupplier("tier") { "gold" }
+        user.setPrivateAttributeSupplier("secret") { 2L }
+        user.setPrivateAttributeSupplier("other") { null }
+
+        assertEquals("free", UserField.of("plan").get(user))
+        assertEquals("gold", UserField.of("tier").get(user))
+        assertEquals(1L, UserField.of("secret").get(user))
+        assertNull(UserField.of("other").get(user))
+    }
+
+    @Test
+    fun testLogsOnlySuppliedCustomValues() {
+        val user = StatsigUser("a_user").apply { custom = mapOf("plan" to "free") }
+        user.setCustomSupplier("tier", Supplier { "gold" })
+        user.setCustomSupplier("unread", Supplier { throw IllegalStateException("not read") })
+        user.setPrivateAttributeSupplier("secret", Supplier { "hidden" })
+
+        assertEquals(mapOf("plan" to "free"), user.getCopyForLogging().custom)
+
+        UserField.of("tier").get(user)
+        UserField.of("secret").get(user)
+        val custom = user.getCopyForLogging().custom!!
+        assertEquals(mapOf("plan" to "free", "tier" to "gold"), custom)
+        assertEquals(custom, user.toMapForLogging()["custom"])
+        assertFalse(custom.containsKey("secret"))
+        assertTrue(user.getCopyForLogging().privateAttributes == null)
+    }
+
+    @Test
+    fun testCopiesDropSuppliers() {
+        val user = StatsigUser("a_user")
+        user.setCustomSupplier("plan") { "pro" }
+
+        val copy = user.copy()
+        assertEquals(user, copy)
+        assertEquals(user.hashCode(), copy.hashCode())
+        assertEquals("pro", UserField.of("plan").get(user))
+        assertNull(UserField.of("plan").get(copy))
+    }
+}
@@ -4,6 +4,7 @@ import kotlinx.coroutines.runBlocking
 import org.junit.After
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotEquals
 import org.junit.Assert.assertTrue
 import org.junit.Before
 import org.junit.Test
@@ -60,6 +61,16 @@ class LocalOverridesTest {
         assertFalse(Statsig.checkGate(userB, "override_me"))
     }
 
+    @Test
+    fun testRemovingLastOverrideRestoresEvaluation() = runBlocking {
+        Statsig.overrideGate("override_me", true, userA.userID)
+        assertEquals(EvaluationReason.LOCAL_OVERRIDE, Statsig.getFeatureGate(userB, "override_me").reason)
+
+        Statsig.removeGateOverride("override_me", userA.userID)
+        assertNotEquals(EvaluationReason.LOCAL_OVERRIDE, Statsig.getFeatureGate(userA, "override_me").reason)
+        assertNotEquals(EvaluationReason.LOCAL_OVERRIDE, Statsig.getFeatureGate(userB, "override_me").reason)
+    }
+
     @Test
     fun testConfigOverridesWithUsers() = runBlocking {
         val emptyMap = mapOf<String, Any>()
@@ -0,0 +1,67 @@
+package com.statsig.sdk
+
+import com.google.gson.GsonBuilder
+import com.google.gson.ToNumberPolicy
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+class NestedGateMemoTest {
+    private lateinit var driver: StatsigServer
+    private lateinit var evaluator: Evaluator
+    private val user = StatsigUser("123")
+
+    @Before
+    fun setUp() {
+        driver = StatsigServer.create()
+        driver.initializeAsync("secret-local", StatsigOptions(localMode = true)).get()
+        evaluator = TestUtilJava.getEvaluatorFromStatsigServer(driver)
+
+        val gson = GsonBuilder().setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE).create()
+        val specs = StatsigE2ETest::class.java.getResource("/download_config_specs.json")?.readText() ?: ""
+        evaluator.specStore.setDownloadedConfigs(gson.fromJson(specs, APIDownloadedConfigs::class.java))
+        TestUtilJava.setInitReasonFromSpecStore(evaluator.specStore, EvaluationReason.NETWORK)
+    }
+
+    @After
+    fun tearDown() {
+        driver.shutdown()
+    }
+
+    @Test
+    fun testNestedGateIsRememberedAndExposed() {
+        val context = EvaluationContext(user)
+        evaluator.getLayer(context, "c_layer_with_holdout")
+
+        val nested = context.nestedGateResults!!["always_on_gate"]!!
+        assertTrue(nested.booleanValue)
+        assertEquals("7d2E854TtGmfETdmJFip1L", context.evaluation.ruleID)
+        assertEquals(
+            listOf(mapOf("gate" to "always_on_gate", "gateValue" to "true", "ruleID" to "6N6Z8ODekNYZ7F8gFdoLP5")),
+            context.evaluation.secondaryExposures,
+        )
+
+        // A later evaluation sharing the memo gets the same result and replays its exposures
+        val next = EvaluationContext(user, nestedGateResults = context.nestedGateResults)
+        evaluator.getLayer(next, "c_layer_with_holdout")
+        assertSame(nested, next.nestedGateResults!!["always_on_gate"])
+        assertEquals(context.evaluation.secondaryExposures, next.evaluation.secondaryExposures)
+    }
+
+    @Test
+    fun testRememberedResultIsUsed() {
+        val failed = ConfigEvaluation(booleanValue = false, ruleID = "memo_rule")
+        val context = EvaluationContext(user, nestedGateResults = hashMapOf("always_on_gate" to failed))
+        evaluator.getLayer(context, "c_layer_with_holdout")
+
+        assertNotEquals("7d2E854TtGmfETdmJFip1L", context.evaluation.ruleID)
+        assertEquals(
+            mapOf("gate" to "always_on_gate", "gateValue" to "false", "ruleID" to "memo_rule"),
+            context.evaluation.secondaryExposures.first(),
+        )
+    }
+}
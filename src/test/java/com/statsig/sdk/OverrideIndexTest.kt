@@ -0,0 +1,63 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class OverrideIndexTest {
+    private fun unitIDRule(id: String, ids: List<Any?>, idType: String = "userID"): APIRule {
+        val target = ArrayList(ids)
+        val condition = APICondition("unit_id", target, "any", null, null, idType)
+        condition.targetSet = TargetSet.compile("any", target)
+        return APIRule(id, 100.0, true, id, null, arrayOf(condition), idType, null, null, null, null)
+    }
+
+    private fun config(name: String, vararg rules: APIRule): APIConfig {
+        return APIConfig(name, "dynamic_config", true, "salt", false, true, arrayOf(*rules), "userID", "experiment", null, null, forwardAllExposures = null)
+    }
+
+    @Test
+    fun testLookup() {
+        val userOverride = unitIDRule("1override", listOf("QA-1", "qa-2", 7L))
+        val companyOverride = unitIDRule("2override", listOf("acme"), "companyID")
+        val targeting = unitIDRule("targeting", listOf("qa-1"))
+        val index = OverrideIndex.build(
+            mapOf("exp_a" to config("exp_a", userOverride, targeting)),
+            mapOf("exp_b" to config("exp_b", companyOverride)),
+        )
+
+        assertSame(index, userOverride.overrideIndex)
+        assertSame(index, companyOverride.overrideIndex)
+        assertNull(targeting.overrideIndex)
+
+        assertEquals(setOf(userOverride), index.rulesFor(StatsigUser("qa-1")))
+        assertEquals(setOf(userOverride), index.rulesFor(StatsigUser("7")))
+        assertTrue(index.rulesFor(StatsigUser("someone")).isEmpty())
+
+        val both = StatsigUser("QA-2").apply { customIDs = mapOf("companyID" to "ACME") }
+        assertEquals(2, index.rulesFor(both).size)
+    }
+
+    @Test
+    fun testMatchesAreSharedByContextCopies() {
+        val userOverride = unitIDRule("1override", listOf("qa-1"))
+        val otherOverride = unitIDRule("2override", listOf("qa-2"))
+        OverrideIndex.build(mapOf("exp_a" to config("exp_a", userOverride, otherOverride)))
+
+        val context = EvaluationContext(StatsigUser("qa-1"), overrideMatches = OverrideMatches())
+        val copy = context.asNewEvaluation()
+        assertSame(context.overrideMatches, copy.overrideMatches)
+        assertTrue(copy.overrideMatches!!.passes(copy.user, userOverride))
+        assertFalse(copy.overrideMatches!!.passes(copy.user, otherOverride))
+    }
+
+    @Test
+    fun testNothingToIndex() {
+        val rule = unitIDRule("1override", listOf())
+        assertSame(OverrideIndex.EMPTY, OverrideIndex.build(mapOf("exp" to config("exp", rule))))
+        assertNull(rule.overrideIndex)
+    }
+}
@@ -0,0 +1,75 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+
+class OverrideRegistryTest {
+    @Test
+    fun testLookupOrder() {
+        val registry = OverrideRegistry()
+        registry.setGate("a_gate", false, null)
+        registry.setGate("a_gate", true, "custom-1")
+        registry.setConfig("a_config", mapOf("v" to "user"), "user-1")
+        registry.setConfig("a_config", mapOf("v" to "custom"), "custom-1")
+
+        val user = StatsigUser("user-1").apply { customIDs = mapOf("companyID" to "custom-1") }
+        val other = StatsigUser("user-2")
+
+        assertEquals(true, registry.getGate("a_gate")!!.lookup(user))
+        assertEquals(false, registry.getGate("a_gate")!!.lookup(other))
+        assertEquals(mapOf("v" to "user"), registry.getConfig("a_config")!!.lookup(user))
+        assertNull(registry.getConfig("a_config")!!.lookup(other))
+        assertNull(registry.getLayer("a_config"))
+    }
+
+    @Test
+    fun testRemovingEverythingKeepsTheEntity() {
+        val registry = OverrideRegistry()
+        registry.setLayer("a_layer", mapOf("v" to 1), null)
+        registry.setLayer("a_layer", mapOf("v" to 2), "user-1")
+
+        registry.removeLayer("a_layer", null)
+        assertEquals(mapOf("v" to 2), registry.getLayer("a_layer")!!.lookup(StatsigUser("user-1")))
+
+        registry.removeLayer("a_layer", "user-1")
+        assertNull(registry.getLayer("a_layer")!!.lookup(StatsigUser("user-1")))
+    }
+
+    @Test
+    fun testReadersNeverSeePartialWrites() {
+        val registry = OverrideRegistry()
+        val executor = Executors.newFixedThreadPool(4)
+        val done = CountDownLatch(1)
+        val failure = AtomicReference<Throwable>()
+        val user = StatsigUser("user-0")
+
+        repeat(3) {
+            executor.execute {
+                try {
+                    while (done.count > 0) {
+                        val gate = registry.getGate("a_gate") ?: continue
+                        gate.lookup(user)
+                    }
+                } catch (e: Throwable) {
+                    failure.set(e)
+                }
+            }
+        }
+        for (i in 0 until 2000) {
+            registry.setGate("a_gate", true, "user-$i")
+            registry.setConfig("config_$i", mapOf("i" to i), null)
+        }
+        done.countDown()
+        executor.shutdown()
+        executor.awaitTermination(5, TimeUnit.SECONDS)
+
+        assertNull(failure.get())
+        assertEquals(true, registry.getGate("a_gate")!!.lookup(StatsigUser("user-1999")))
+        assertEquals(mapOf("i" to 1999), registry.getConfig("config_1999")!!.lookup(user))
+    }
+}
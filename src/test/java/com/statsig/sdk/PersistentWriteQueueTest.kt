@@ -0,0 +1,137 @@
+package com.statsig.sdk
+
+import com.statsig.sdk.persistent_storage.IUserPersistentStorage
+import com.statsig.sdk.persistent_storage.PersistentWriteQueue
+import com.statsig.sdk.persistent_storage.StickyValues
+import com.statsig.sdk.persistent_storage.UserPersistedValues
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class PersistentWriteQueueTest {
+    private class RecordingStorage : IUserPersistentStorage {
+        val writes = ArrayList<String>()
+        var failOn: String? = null
+
+        override suspend fun load(key: String): UserPersistedValues {
+            return emptyMap()
+        }
+
+        override fun save(key: String, configName: String, data: StickyValues) {
+            if (configName == failOn) {
+                throw IllegalStateException("unavailable")
+            }
+            writes.add("save $key $configName ${data.ruleID}")
+        }
+
+        override fun delete(key: String, configName: String) {
+            if (configName == failOn) {
+                throw IllegalStateException("unavailable")
+            }
+            writes.add("delete $key $configName")
+        }
+    }
+
+    private val scope = CoroutineScope(SupervisorJob())
+    private val storage = RecordingStorage()
+    private val errors = ArrayList<Throwable>()
+    private val queue = PersistentWriteQueue(storage, scope) { errors.add(it) }
+
+    private fun sticky(ruleID: String) = StickyValues(ruleID = ruleID, time = 1)
+
+    @After
+    fun tearDown() {
+        queue.shutdown()
+        scope.cancel()
+    }
+
+    @Test
+    fun testCoalescesWritesToTheSameConfig() {
+        queue.save("u1:userID", "exp_a", sticky("control"))
+        queue.delete("u1:userID", "exp_b")
+        queue.save("u1:userID", "exp_a", sticky("test"))
+        assertTrue(storage.writes.isEmpty())
+
+        queue.flush()
+
+        assertEquals(listOf("save u1:userID exp_a test", "delete u1:userID exp_b"), storage.writes)
+        val metrics = queue.getMetrics()
+        assertEquals(3, metrics.queued)
+        assertEquals(1, metrics.coalesced)
+        assertEquals(2, metrics.written)
+        assertEquals(0, metrics.pending)
+    }
+
+    @Test
+    fun testSuppressesRepeatedDeletes() {
+        queue.delete("u1:userID", "exp_a")
+        queue.flush()
+        queue.delete("u1:userID", "exp_a")
+        queue.flush()
+        assertEquals(1, queue.getMetrics().suppressedDeletes)
+
+        // A save in between means there is something to delete again
+        queue.save("u1:userID", "exp_a", sticky("test"))
+        queue.delete("u1:userID", "exp_a")
+        queue.flush()
+        assertEquals(listOf("delete u1:userID exp_a", "delete u1:userID exp_a"), storage.writes)
+    }
+
+    @Test
+    fun testRetriesFailedDeletes() {
+        storage.failOn = "exp_a"
+        queue.delete("u1:userID", "exp_a")
+        queue.flush()
+        assertEquals(1, queue.getMetrics().failed)
+
+        storage.failOn = null
+        queue.delete("u1:userID", "exp_a")
+        queue.flush()
+        assertEquals(listOf("delete u1:userID exp_a"), storage.writes)
+        assertEquals(0, queue.getMetrics().suppressedDeletes)
+
+        // Only once it has succeeded is the storage known to have nothing to delete
+        queue.delete("u1:userID", "exp_a")
+        assertEquals(1, queue.getMetrics().suppressedDeletes)
+    }
+
+    @Test
+    fun testSuppressesDeletesOfConfigsLoadedWithoutEntries() {
+        queue.recordLoaded("u1:userID", mapOf("exp_a" to sticky("test")), listOf("exp_a", "exp_b"))
+        queue.delete("u1:userID", "exp_a")
+        queue.delete("u1:userID", "exp_b")
+        queue.flush()
+
+        assertEquals(listOf("delete u1:userID exp_a"), storage.writes)
+        assertEquals(1, queue.getMetrics().suppressedDeletes)
+    }
+
+    @Test
+    fun testLoadsSeeUnflushedWrites() {
+        queue.save("u1:userID", "exp_a", sticky("test"))
+        queue.delete("u1:userID", "exp_b")
+        val loaded = mapOf("exp_b" to sticky("control"), "exp_c" to sticky("control"))
+
+        val applied = queue.applyPending("u1:userID", loaded, null)
+        assertEquals(setOf("exp_a", "exp_c"), applied.keys)
+        // Writes to configs that weren't asked for are left out
+        assertEquals(setOf("exp_b", "exp_c"), queue.applyPending("u1:userID", loaded, listOf("exp_c")).keys)
+        assertEquals(loaded, queue.applyPending("u2:userID", loaded, null))
+    }
+
+    @Test
+    fun testCountsFailedWrites() {
+        storage.failOn = "exp_a"
+        queue.save("u1:userID", "exp_a", sticky("test"))
+        queue.save("u1:userID", "exp_b", sticky("test"))
+        queue.flush()
+
+        assertEquals(listOf("save u1:userID exp_b test"), storage.writes)
+        assertEquals(1, queue.getMetrics().failed)
+        assertEquals(1, errors.size)
+    }
+}
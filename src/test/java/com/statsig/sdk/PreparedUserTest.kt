@@ -0,0 +1,62 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class PreparedUserTest {
+    private fun condition(type: String, field: String?, idType: String = "userID"): APICondition {
+        val condition = APICondition(type, arrayListOf("x"), "any", field, null, idType)
+        if (field != null) {
+            condition.userField = UserField.of(field)
+        }
+        return condition
+    }
+
+    private fun gate(name: String, vararg conditions: APICondition): APIConfig {
+        val rule = APIRule(name, 100.0, true, name, null, arrayOf(*conditions), "userID", null, null, null, null)
+        return APIConfig(name, "feature_gate", true, "salt", false, true, arrayOf(rule), "userID", "feature_gate", null, null, forwardAllExposures = null)
+    }
+
+    @Test
+    fun testAttributesAreNumberedOncePerDownload() {
+        val level = condition("user_field", "level")
+        val sameLevel = condition("user_field", "level")
+        val company = condition("unit_id", null, idType = "companyID")
+        val bucket = condition("user_bucket", null, idType = "companyID")
+        val configs = mapOf("gate_a" to gate("gate_a", level, company), "gate_b" to gate("gate_b", sameLevel, bucket))
+
+        val table = UserAttributes.build(configs)
+
+        // level, companyID and the rules' userID
+        assertEquals(3, table.size)
+        assertSame(level.attribute, sameLevel.attribute)
+        assertSame(company.idAttribute, bucket.idAttribute)
+        assertNotNull(configs.getValue("gate_a").rules[0].idAttribute)
+        assertNull(company.attribute)
+    }
+
+    @Test
+    fun testValuesAndConversions() {
+        val level = condition("user_field", "Level")
+        val company = condition("unit_id", null, idType = "companyID")
+        UserAttributes.build(mapOf("gate_a" to gate("gate_a", level, company)))
+
+        val user = StatsigUser("a_user", mapOf("companyid" to "ACME"))
+        user.custom = mapOf("level" to "12.5")
+        val prepared = PreparedUser(user)
+
+        assertEquals("12.5", prepared.get(level.attribute!!))
+        assertEquals(12.5, prepared.number(level.attribute!!)!!, 0.0)
+        assertEquals("ACME", prepared.getID(company.idAttribute!!))
+        assertEquals("acme", prepared.lowercase(company.idAttribute!!, "ACME"))
+
+        // Read once per call
+        user.custom = mapOf("level" to "nope")
+        assertEquals("12.5", prepared.get(level.attribute!!))
+        val other = PreparedUser(user)
+        assertNull(other.number(level.attribute!!))
+    }
+}
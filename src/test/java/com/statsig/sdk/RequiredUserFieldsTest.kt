@@ -0,0 +1,85 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class RequiredUserFieldsTest {
+    private fun condition(type: String, field: String? = null, target: Any? = null, idType: String = "userID"): APICondition {
+        return APICondition(type, target, "any", field, null, idType)
+    }
+
+    private fun rule(vararg conditions: APICondition, passPercentage: Double = 100.0, idType: String = "userID", delegate: String? = null): APIRule {
+        return APIRule("rule", passPercentage, true, "rule", null, arrayOf(*conditions), idType, null, delegate, null, null)
+    }
+
+    private fun spec(name: String, vararg rules: APIRule): Pair<String, APIConfig> {
+        return name to APIConfig(name, "feature_gate", true, "salt", false, true, arrayOf(*rules), "userID", "feature_gate", null, null, forwardAllExposures = null)
+    }
+
+    private fun build(gates: Map<String, APIConfig>, configs: Map<String, APIConfig> = emptyMap(), layers: Map<String, APIConfig> = emptyMap()): RequiredUserFieldsIndex {
+        val graph = SpecDependencyGraph.build(gates, configs, layers)
+        return RequiredUserFieldsIndex.build(graph, gates, configs, layers)
+    }
+
+    @Test
+    fun testFollowsNestedGatesAndDelegates() {
+        val gates = mapOf(
+            spec("segment:employees", rule(condition("user_field", "email"))),
+            spec("beta", rule(condition("pass_gate", target = "segment:employees"), condition("unit_id", idType = "companyID"))),
+            spec("plain", rule(condition("public"))),
+        )
+        val configs = mapOf(
+            spec("experiment", rule(condition("fail_gate", target = "beta"), passPercentage = 50.0, idType = "")),
+        )
+        val layers = mapOf(
+            spec("layer", rule(condition("environment_field", "tier"), delegate = "experiment")),
+        )
+        val index = build(gates, configs, layers)
+
+        val layer = index.get(SpecNode(EntityType.LAYER, "layer"))
+        assertEquals(setOf("email"), layer.userFields)
+        assertEquals(setOf("companyID", "userID"), layer.idTypes)
+        assertEquals(setOf("tier"), layer.environmentFields)
+
+        // Specs reading nothing new share their reference's instance
+        assertSame(index.get(SpecNode(EntityType.GATE, "segment:employees")), index.forNames(listOf("segment:employees", "plain")))
+        assertSame(RequiredUserFields.EMPTY, index.forNames(listOf("plain", "missing")))
+    }
+
+    @Test
+    fun testImplicitReads() {
+        val gates = mapOf(
+            spec("geo", rule(condition("ip_based", "country"), condition("ua_based", "os_name"))),
+            spec("clock", rule(condition("current_time"))),
+            spec("sampled", rule(condition("user_bucket", idType = "deviceID"), passPercentage = 100.0)),
+            spec("listed", rule(APICondition("unit_id", "a_list", "in_segment_list", null, null, "userID"))),
+            spec("app", rule(condition("target_app", target = listOf("app")))),
+        )
+        val index = build(gates)
+
+        assertEquals(setOf("country", "ip", "os_name", "userAgent"), index.forNames(listOf("geo")).userFields)
+        assertFalse(index.forNames(listOf("clock")).cacheable)
+        assertFalse(index.forNames(listOf("listed")).cacheable)
+        assertFalse(index.forNames(listOf("app")).cacheable)
+        assertFalse(index.forNames(listOf("geo", "clock")).cacheable)
+        assertTrue(index.forNames(listOf("geo")).cacheable)
+        assertEquals(setOf("deviceID"), index.forNames(listOf("sampled")).idTypes)
+    }
+
+    @Test
+    fun testCyclesShareTheirReads() {
+        val gates = mapOf(
+            spec("a", rule(condition("pass_gate", target = "b"), condition("user_field", "plan"))),
+            spec("b", rule(condition("pass_gate", target = "a"), condition("user_field", "locale"))),
+            spec("c", rule(condition("pass_gate", target = "b"))),
+        )
+        val index = build(gates)
+
+        for (name in listOf("a", "b", "c")) {
+            assertEquals(setOf("plan", "locale"), index.forNames(listOf(name)).userFields)
+        }
+    }
+}
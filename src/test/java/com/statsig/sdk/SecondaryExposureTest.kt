@@ -0,0 +1,44 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class SecondaryExposureTest {
+    private val gson = Utils.getGson()
+
+    @Test
+    fun testBehavesLikeMap() {
+        val exposure = SecondaryExposure("a_gate", "true", "rule_1")
+        val map = mapOf("gate" to "a_gate", "gateValue" to "true", "ruleID" to "rule_1")
+
+        assertEquals(map, exposure)
+        assertEquals(exposure, map)
+        assertEquals(map.hashCode(), exposure.hashCode())
+        assertEquals("a_gate", exposure["gate"])
+        assertEquals(null, exposure["other"])
+        assertEquals(gson.toJson(map), gson.toJson(exposure))
+        assertEquals(gson.toJson(arrayListOf(map)), gson.toJson(arrayListOf<Map<String, String>>(exposure)))
+    }
+
+    @Test
+    fun testDedupeKey() {
+        val exposure = SecondaryExposure("a_gate", "false", "default")
+        val map = mapOf("gate" to "a_gate", "gateValue" to "false", "ruleID" to "default")
+
+        assertEquals("a_gate|false|default", exposure.dedupeKey)
+        assertEquals(exposure.dedupeKey, SecondaryExposure.dedupeKeyOf(map))
+    }
+
+    @Test
+    fun testPoolInternsRecords() {
+        val pool = SecondaryExposurePool()
+
+        val first = pool.get("a_gate", true, "rule_1")
+        assertSame(first, pool.get("a_gate", true, "rule_1"))
+        assertNotSame(first, pool.get("a_gate", false, "rule_1"))
+        assertNotSame(first, pool.get("a_gate", true, "rule_2"))
+        assertEquals("false", pool.get("a_gate", false, "rule_1").gateValue)
+    }
+}
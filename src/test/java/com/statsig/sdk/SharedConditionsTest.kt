@@ -0,0 +1,56 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class SharedConditionsTest {
+    private fun condition(type: String, target: Any?, field: String? = "country"): APICondition {
+        return APICondition(type, target, "any", field, null, "userID")
+    }
+
+    private fun gate(name: String, vararg conditions: APICondition): APIConfig {
+        val rule = APIRule(name, 100.0, true, name, null, arrayOf(*conditions), "userID", null, null, null, null)
+        return APIConfig(name, "feature_gate", true, "salt", false, true, arrayOf(rule), "userID", "feature_gate", null, null, forwardAllExposures = null)
+    }
+
+    @Test
+    fun testIdenticalConditionsShareASlot() {
+        val first = condition("user_field", arrayListOf("US", "CA"))
+        val second = condition("user_field", arrayListOf("US", "CA"))
+        val otherField = condition("user_field", arrayListOf("US", "CA"), field = "locale")
+        val nestedGate = condition("pass_gate", "a_gate", field = null)
+        val sameNestedGate = condition("pass_gate", "a_gate", field = null)
+
+        val table = SharedConditions.build(
+            mapOf("gate_a" to gate("gate_a", first, nestedGate)),
+            mapOf("gate_b" to gate("gate_b", second, otherField, sameNestedGate)),
+        )
+
+        assertEquals(1, table.size)
+        assertNotNull(first.shared)
+        assertSame(first.shared, second.shared)
+        assertNull(otherField.shared)
+        assertNull(nestedGate.shared)
+        assertNull(sameNestedGate.shared)
+    }
+
+    @Test
+    fun testMemo() {
+        val first = condition("unit_id", arrayListOf("u1"))
+        val second = condition("unit_id", arrayListOf("u1"))
+        SharedConditions.build(mapOf("gate_a" to gate("gate_a", first), "gate_b" to gate("gate_b", second)))
+
+        val memo = ConditionMemo()
+        assertNull(memo.get(first.shared!!))
+        memo.put(first.shared!!, false)
+        assertEquals(false, memo.get(second.shared!!))
+
+        // Conditions from a later download start over
+        val reloaded = condition("unit_id", arrayListOf("u1"))
+        SharedConditions.build(mapOf("gate_a" to gate("gate_a", reloaded), "gate_b" to gate("gate_b", condition("unit_id", arrayListOf("u1")))))
+        assertNull(memo.get(reloaded.shared!!))
+    }
+}
@@ -0,0 +1,117 @@
+package com.statsig.sdk
+
+import com.google.gson.GsonBuilder
+import com.google.gson.ToNumberPolicy
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SpecDependencyGraphTest {
+    private val gson = GsonBuilder().setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE).create()
+
+    private fun spec(name: String, type: String, gates: List<String>, delegate: String? = null): APIConfig {
+        val conditions = gates.joinToString(",") {
+            """{"type": "pass_gate", "targetValue": "$it", "operator": null, "field": null, "additionalValues": {}, "idType": "userID"}"""
+        }
+        val configDelegate = if (delegate == null) "null" else "\"$delegate\""
+        val json = """
+            {
+              "name": "$name", "type": "$type", "isActive": true, "salt": "salt", "defaultValue": {},
+              "enabled": true, "idType": "userID", "entity": "$type",
+              "rules": [{
+                "name": "rule", "passPercentage": 100, "returnValue": {}, "id": "rule", "salt": "salt",
+                "idType": "userID", "configDelegate": $configDelegate, "conditions": [$conditions]
+              }]
+            }
+        """.trimIndent()
+        return gson.fromJson(json, APIConfig::class.java)
+    }
+
+    private fun gate(name: String, vararg gates: String) = name to spec(name, "feature_gate", gates.toList())
+
+    private fun node(type: EntityType, name: String) = SpecNode(type, name)
+
+    @Test
+    fun testDependenciesComeFirst() {
+        val gates = linkedMapOf(
+            gate("top", "middle"),
+            gate("middle", "segment:base"),
+            gate("segment:base"),
+            gate("unrelated"),
+        )
+        val configs = mapOf("experiment" to spec("experiment", "dynamic_config", listOf("top")))
+        val layers = mapOf("layer" to spec("layer", "dynamic_config", listOf(), delegate = "experiment"))
+        val graph = SpecDependencyGraph.build(gates, configs, layers)
+
+        val order = graph.evaluationOrder
+        assertEquals(6, order.size)
+        for (node in order) {
+            for (dependency in graph.getDependencies(node)) {
+                assertTrue("$dependency before $node", order.indexOf(dependency) < order.indexOf(node))
+            }
+        }
+        assertTrue(graph.cycles.isEmpty())
+
+        assertEquals(listOf(node(EntityType.CONFIG, "experiment")), graph.getDependencies(node(EntityType.LAYER, "layer")))
+        assertEquals(listOf(node(EntityType.GATE, "middle")), graph.getDependents(node(EntityType.GATE, "segment:base")))
+        assertEquals(
+            setOf(
+                node(EntityType.GATE, "middle"),
+                node(EntityType.GATE, "top"),
+                node(EntityType.CONFIG, "experiment"),
+                node(EntityType.LAYER, "layer"),
+            ),
+            graph.getImpactedNodes(node(EntityType.GATE, "segment:base")),
+        )
+        assertTrue(graph.getImpactedNodes(node(EntityType.GATE, "unrelated")).isEmpty())
+    }
+
+    @Test
+    fun testMissingReferencesAreIgnored() {
+        val graph = SpecDependencyGraph.build(linkedMapOf(gate("a", "not_a_gate")), emptyMap(), emptyMap())
+
+        assertTrue(graph.getDependencies(node(EntityType.GATE, "a")).isEmpty())
+        assertEquals(listOf(node(EntityType.GATE, "a")), graph.evaluationOrder)
+    }
+
+    @Test
+    fun testCycleIsListedOnce() {
+        val gates = linkedMapOf(gate("a", "b"), gate("b", "c"), gate("c", "a"), gate("d", "a"))
+        val graph = SpecDependencyGraph.build(gates, emptyMap(), emptyMap())
+
+        assertEquals(
+            listOf(listOf(node(EntityType.GATE, "a"), node(EntityType.GATE, "b"), node(EntityType.GATE, "c"))),
+            graph.cycles,
+        )
+        assertEquals(4, graph.evaluationOrder.size)
+    }
+
+    @Test
+    fun testSpecStoreWarnsOncePerCycle() {
+        val warnings = arrayListOf<String>()
+        val options = StatsigOptions(localMode = true).apply {
+            customLogger = object : LoggerInterface {
+                override fun error(message: String) {}
+                override fun warn(message: String) {
+                    warnings.add(message)
+                }
+                override fun info(message: String) {}
+                override fun debug(message: String) {}
+                override fun setLogLevel(level: LogLevel) {}
+            }
+        }
+        val driver = StatsigServer.create()
+        driver.initializeAsync("secret-local", options).get()
+        val evaluator = TestUtilJava.getEvaluatorFromStatsigServer(driver)
+
+        val gates = arrayOf(gate("a", "b").second, gate("b", "a").second)
+        for (time in 1L..2L) {
+            val specs = APIDownloadedConfigs(emptyArray(), gates, emptyArray(), null, null, time, true)
+            evaluator.specStore.setDownloadedConfigs(specs)
+        }
+
+        assertEquals(1, driver.getSpecDependencyGraph().cycles.size)
+        driver.shutdown()
+        assertEquals(listOf("[StatsigSpecStore] Found a reference cycle between specs: gate:a -> gate:b -> gate:a"), warnings)
+    }
+}
@@ -0,0 +1,59 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class StringMatcherTest {
+    @Test
+    fun testPrefixAndSuffix() {
+        val prefixes = StringMatcher.compile(Const.STR_STARTS_WITH_ANY, arrayListOf("/Admin", "/api/v", 12L))!!
+        assertTrue(prefixes.matches("/admin/users"))
+        assertTrue(prefixes.matches("/API/V2"))
+        assertTrue(prefixes.matches("123"))
+        assertFalse(prefixes.matches("/ap"))
+        assertFalse(prefixes.matches("x/admin"))
+
+        val suffixes = StringMatcher.compile(Const.STR_ENDS_WITH_ANY, arrayListOf("@statsig.com", "@Example.org"))!!
+        assertTrue(suffixes.matches("someone@STATSIG.com"))
+        assertTrue(suffixes.matches("someone@example.org"))
+        assertFalse(suffixes.matches("someone@statsig.com.evil"))
+    }
+
+    @Test
+    fun testContains() {
+        val matcher = StringMatcher.compile(Const.STR_CONTAINS_ANY, arrayListOf("she", "hers", "his", null))!!
+        assertTrue(matcher.matches("USHERS"))
+        assertTrue(matcher.matches("ahisb"))
+        assertFalse(matcher.matches("hehe"))
+        assertFalse(matcher.matches(""))
+
+        // Each overlapping candidate has to be found through the failure links
+        val overlapping = StringMatcher.compile(Const.STR_CONTAINS_NONE, arrayListOf("abcd", "bce"))!!
+        assertTrue(overlapping.matches("xabcex"))
+        assertFalse(overlapping.matches("abcbc"))
+    }
+
+    @Test
+    fun testEmptyTargetMatchesEverything() {
+        assertTrue(StringMatcher.compile(Const.STR_CONTAINS_ANY, arrayListOf(""))!!.matches(""))
+        assertTrue(StringMatcher.compile(Const.STR_ENDS_WITH_ANY, arrayListOf("x", ""))!!.matches("abc"))
+        assertFalse(StringMatcher.compile(Const.STR_STARTS_WITH_ANY, arrayListOf<Any>())!!.matches("abc"))
+    }
+
+    @Test
+    fun testCaseFolding() {
+        val matcher = StringMatcher.compile(Const.STR_CONTAINS_ANY, arrayListOf("Ω", "ǅ"))!!
+        assertTrue(matcher.matches("xωx"))
+        assertTrue(matcher.matches("Ǆ"))
+        assertTrue(StringMatcher.compile(Const.STR_STARTS_WITH_ANY, arrayListOf("abc"))!!.matches("aBc𐐀"))
+    }
+
+    @Test
+    fun testUnsupportedTargets() {
+        assertNull(StringMatcher.compile(Const.ANY, arrayListOf("a")))
+        assertNull(StringMatcher.compile(Const.STR_CONTAINS_ANY, "a"))
+        assertNull(StringMatcher.compile(Const.STR_CONTAINS_ANY, arrayListOf("𐐀")))
+    }
+}
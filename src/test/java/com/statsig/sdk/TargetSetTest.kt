@@ -0,0 +1,63 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class TargetSetTest {
+    @Test
+    fun testStringTargets() {
+        val any = TargetSet.compile(Const.ANY, arrayListOf("Apple", 42L, null, "straße"))!!
+        assertTrue(any.containsString("aPPLE"))
+        assertTrue(any.containsString("42"))
+        assertTrue(any.containsString("STRAßE"))
+        assertFalse(any.containsString("42.0"))
+        assertFalse(any.containsString("null"))
+
+        val caseSensitive = TargetSet.compile(Const.ANY_CASE_SENSITIVE, arrayListOf("Apple"))!!
+        assertTrue(caseSensitive.containsString("Apple"))
+        assertFalse(caseSensitive.containsString("apple"))
+    }
+
+    @Test
+    fun testFoldMatchesEqualsIgnoreCase() {
+        val pairs = listOf("Ω" to "ω", "Ω" to "ω", "K" to "k", "ǅ" to "ǆ", "İ" to "i", "ı" to "I", "ß" to "SS")
+        for ((a, b) in pairs) {
+            assertEquals("$a vs $b", a.equals(b, true), TargetSet.fold(a) == TargetSet.fold(b))
+        }
+    }
+
+    @Test
+    fun testArrayContainsAny() {
+        val targets = TargetSet.compile(Const.ARRAY_CONTAINS_ANY, arrayListOf("a", "2"))!!
+        assertTrue(targets.containsAnyOf(listOf(1L, "a")))
+        assertTrue(targets.containsAnyOf(listOf(2.0)))
+        assertFalse(targets.containsAnyOf(listOf(2L, "A")))
+        assertFalse(targets.containsAnyOf(listOf(null)))
+
+        // Non-string targets are left to the evaluator
+        assertNull(TargetSet.compile(Const.ARRAY_CONTAINS_ANY, arrayListOf("a", 2L)))
+    }
+
+    @Test
+    fun testArrayContainsAll() {
+        val targets = TargetSet.compile(Const.ARRAY_CONTAINS_ALL, arrayListOf("a", "2", "a"))!!
+        assertTrue(targets.isContainedIn(listOf("a", 2.0)))
+        assertTrue(targets.isContainedIn((0..20).map { it.toString() } + listOf("a", "2")))
+        assertFalse(targets.isContainedIn(listOf("a", 2L)))
+        assertFalse(targets.isContainedIn(listOf("a")))
+
+        assertTrue(TargetSet.compile(Const.ARRAY_CONTAINS_ALL, arrayListOf<Any>())!!.isContainedIn(listOf<Any>()))
+        assertTrue(TargetSet.compile(Const.ARRAY_CONTAINS_ALL, "b")!!.isContainedIn(listOf("b")))
+    }
+
+    @Test
+    fun testLargeTargetList() {
+        val ids = ArrayList<Any>((0 until 50_000).map { "User-$it" })
+        val targets = TargetSet.compile(Const.ANY, ids)!!
+        assertTrue(targets.containsString("user-49999"))
+        assertFalse(targets.containsString("user-50000"))
+    }
+}
@@ -0,0 +1,57 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class TimeThresholdTest {
+    private fun compile(operator: String, target: Any?, targetTimestamp: Long? = null): TimeThreshold? {
+        val condition = APICondition("current_time", target, operator, null, null, "userID")
+        condition.targetTimestamp = targetTimestamp
+        return TimeThreshold.compile(condition)
+    }
+
+    @Test
+    fun testNumericComparisons() {
+        val gt = compile("gt", 1000L)!!
+        assertFalse(gt.passes(1000))
+        assertTrue(gt.passes(1001))
+
+        val gte = compile("gte", "1000")!!
+        assertFalse(gte.passes(999))
+        assertTrue(gte.passes(1000))
+
+        val lt = compile("lt", 1000.5)!!
+        assertTrue(lt.passes(1000))
+        assertFalse(lt.passes(1001))
+
+        val lte = compile("lte", 1000.5)!!
+        assertTrue(lte.passes(1000))
+        assertFalse(lte.passes(1001))
+    }
+
+    @Test
+    fun testTimestampComparisons() {
+        val after = compile("after", "ignored", targetTimestamp = 1_600_000_000_000)!!
+        assertEquals(1_600_000_000_001, after.threshold)
+        assertFalse(after.passes(1_600_000_000_000))
+        assertTrue(after.passes(1_600_000_000_001))
+
+        val before = compile("before", "ignored", targetTimestamp = 1_600_000_000_000)!!
+        assertTrue(before.passes(1_599_999_999_999))
+        assertFalse(before.passes(1_600_000_000_000))
+    }
+
+    @Test
+    fun testUncompiledTargets() {
+        assertNull(compile("gt", "soon"))
+        assertNull(compile("gt", null))
+        assertNull(compile("gt", Double.NaN))
+        assertNull(compile("lt", 1e300))
+        assertNull(compile("after", "not a date"))
+        assertNull(compile("on", 1_600_000_000_000, targetTimestamp = 1_600_000_000_000))
+        assertNull(compile("eq", "1600000000000"))
+    }
+}
@@ -0,0 +1,55 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.time.Instant
+import java.time.ZoneId
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class TimestampsTest {
+    @Test
+    fun testParse() {
+        assertEquals(1_700_000_000_000L, Timestamps.parse("1700000000"))
+        assertEquals(1_700_000_000_000L, Timestamps.parse(1_700_000_000L))
+        assertEquals(1_700_000_000_000L, Timestamps.parse("1700000000000"))
+        assertEquals(1_700_000_000_000L, Timestamps.parse(1.7e12))
+        assertEquals(1_700_000_000_000L, Timestamps.parse("2023-11-14T22:13:20Z"))
+        assertEquals(Timestamps.INVALID, Timestamps.parse(null))
+        assertEquals(Timestamps.INVALID, Timestamps.parse(listOf(1)))
+    }
+
+    @Test(expected = Exception::class)
+    fun testParseInvalidString() {
+        Timestamps.parse("not a date")
+    }
+
+    @Test
+    fun testEpochDay() {
+        for (iso in listOf("2023-11-14T00:30:00Z", "2023-11-14T12:00:00Z", "2023-11-14T23:30:00Z", "1969-12-31T23:59:59Z")) {
+            val time = Timestamps.parse(iso)
+            val localDay = Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()).toLocalDate().toEpochDay()
+            assertEquals(localDay, Timestamps.epochDay(time))
+        }
+    }
+
+    @Test
+    fun testConcurrentDayComparison() {
+        val executor = Executors.newFixedThreadPool(8)
+        val mismatches = AtomicInteger(0)
+        val days = (0 until 8).map { 1_700_000_000_000L + it * 24 * 60 * 60 * 1000L }
+        for (day in days) {
+            executor.execute {
+                repeat(10_000) {
+                    if (Timestamps.epochDay(day) != Timestamps.epochDay(day + 1)) {
+                        mismatches.incrementAndGet()
+                    }
+                }
+            }
+        }
+        executor.shutdown()
+        executor.awaitTermination(10, TimeUnit.SECONDS)
+        assertEquals(0, mismatches.get())
+    }
+}
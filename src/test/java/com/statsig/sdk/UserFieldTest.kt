@@ -0,0 +1,32 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class UserFieldTest {
+    private val user = StatsigUser("a_user").apply {
+        email = "a@b.com"
+        custom = mapOf("Plan" to "pro", "tier" to "gold", "blank" to "")
+        privateAttributes = mapOf("blank" to "hidden", "secret" to 7L)
+    }
+
+    @Test
+    fun testBuiltInProperties() {
+        assertEquals("a_user", UserField.of("userID").get(user))
+        assertEquals("a_user", UserField.of("user_id").get(user))
+        assertEquals("a@b.com", UserField.of("Email").get(user))
+    }
+
+    @Test
+    fun testCustomAndPrivateAttributes() {
+        assertEquals("pro", UserField.of("Plan").get(user))
+        assertNull(UserField.of("plan").get(user))
+        assertEquals("gold", UserField.of("TIER").get(user))
+        assertEquals("hidden", UserField.of("blank").get(user))
+        assertEquals(7L, UserField.of("secret").get(user))
+        // An empty property falls through to custom
+        assertEquals("gold", UserField.of("country").get(StatsigUser("b").apply { country = ""; custom = mapOf("country" to "gold") }))
+        assertNull(UserField.of("missing").get(user))
+    }
+}
@@ -0,0 +1,61 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Test
+
+class UserFingerprintTest {
+    private fun user(custom: Map<String, Any>) = StatsigUser("a_user").apply {
+        email = "a@statsig.com"
+        this.custom = custom
+        customIDs = mapOf("companyID" to "c1", "stableID" to "s1")
+    }
+
+    @Test
+    fun testIgnoresMapOrder() {
+        val first = linkedMapOf<String, Any>("plan" to "pro", "seats" to 10L, "tags" to mapOf("a" to 1L, "b" to 2L))
+        val second = linkedMapOf<String, Any>("tags" to mapOf("b" to 2L, "a" to 1L), "seats" to 10L, "plan" to "pro")
+
+        assertEquals(user(first).getFingerprint(), user(second).getFingerprint())
+        assertEquals(user(first).getFingerprint(), user(first).getFingerprint())
+    }
+
+    @Test
+    fun testDistinguishesValuesAndFields() {
+        val base = user(mapOf("plan" to "pro"))
+        assertNotEquals(base.getFingerprint(), user(mapOf("plan" to "free")).getFingerprint())
+        assertNotEquals(base.getFingerprint(), user(mapOf("plan" to listOf("pro"))).getFingerprint())
+        assertNotEquals(base.getFingerprint(), user(mapOf("seats" to 10L)).getFingerprint())
+        assertNotEquals(user(mapOf("seats" to 10L)).getFingerprint(), user(mapOf("seats" to 10.0)).getFingerprint())
+        assertNotEquals(
+            StatsigUser("a_user").apply { email = "x" }.getFingerprint(),
+            StatsigUser("a_user").apply { country = "x" }.getFingerprint(),
+        )
+        // Other objects hash with their class, not just their text
+        assertNotEquals(base.getFingerprint(), user(mapOf("plan" to StringBuilder("pro"))).getFingerprint())
+        // stableID is part of the user here, unlike in getHashWithoutStableID
+        assertNotEquals(base.getFingerprint(), user(mapOf("plan" to "pro")).apply { customIDs = mapOf("companyID" to "c1") }.getFingerprint())
+    }
+
+    @Test
+    fun testIncludesSuppliedAttributes() {
+        val first = user(emptyMap()).apply { setCustomSupplier("plan") { "pro" } }
+        val second = user(emptyMap()).apply { setCustomSupplier("plan") { "free" } }
+        assertNotEquals(first.getFingerprint(), second.getFingerprint())
+    }
+
+    @Test
+    fun testRestrictsToRequiredFields() {
+        val fields = RequiredUserFields(setOf("Plan", "email"), setOf("companyID"), setOf("tier"), true)
+        val first = user(mapOf("plan" to "pro", "seats" to 10L)).apply { country = "US" }
+        val second = user(mapOf("plan" to "pro", "seats" to 20L)).apply { country = "CA" }
+
+        assertEquals(first.getFingerprint(fields), second.getFingerprint(fields))
+        assertNotEquals(first.getFingerprint(), second.getFingerprint())
+
+        val otherCompany = user(mapOf("plan" to "pro")).apply { customIDs = mapOf("companyID" to "c2") }
+        val staging = user(mapOf("plan" to "pro")).apply { statsigEnvironment = mapOf("tier" to "staging") }
+        assertNotEquals(first.getFingerprint(fields), otherCompany.getFingerprint(fields))
+        assertNotEquals(first.getFingerprint(fields), staging.getFingerprint(fields))
+    }
+}
@@ -0,0 +1,37 @@
+package com.statsig.sdk
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class VersionTest {
+    private fun compare(v1: Any?, v2: Any?): Int? {
+        val version1 = Version.parse(v1) ?: return null
+        val version2 = Version.parse(v2) ?: return null
+        val comparison = version1.compareTo(version2)
+        return if (comparison == Version.INCOMPARABLE) null else comparison
+    }
+
+    @Test
+    fun testCompare() {
+        assertEquals(0, compare("1.2", "1.2.0"))
+        assertEquals(1, compare("1.10", "1.9.9"))
+        assertEquals(-1, compare("1.2.3", "1.2.4"))
+        assertEquals(0, compare("1.2.3-beta", "1.2.3"))
+        assertEquals(0, compare(" 1 . 2 ", "1.2"))
+        assertEquals(1, compare(2L, "1.9"))
+        assertEquals(0, compare(1.2, "1.2"))
+    }
+
+    @Test
+    fun testInvalidParts() {
+        assertNull(compare(null, "1.2"))
+        assertNull(compare("", "1.2"))
+        assertNull(compare("1..2", "1.0.2"))
+        assertNull(compare("1.2", "1.a"))
+
+        // A difference before the first invalid part still decides
+        assertEquals(1, compare("2", "1.a"))
+        assertEquals(-1, compare("1.1.x", "1.2"))
+    }
+}